@@ -9,6 +9,7 @@ plugins {
     jacoco
     id("org.jreleaser") version "1.21.0"
     id("com.gradleup.shadow") version "9.2.2"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "tanin.wait"
@@ -67,6 +68,24 @@ application {
     mainClass.set("tanin.wait.Main")
 }
 
+// Run with `./gradlew jmh`. The benchmarks live in src/jmh/java and may use the stubs in src/test/java.
+// The results are written as JSON so that runs of different versions can be compared.
+jmh {
+    jmhVersion = "1.37"
+    includeTests = true
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    if (project.hasProperty("jmhIncludes")) {
+        includes = listOf(project.property("jmhIncludes").toString())
+    }
+    if (project.hasProperty("jmhThreads")) {
+        threads = project.property("jmhThreads").toString().toInt()
+    }
+    if (project.hasProperty("jmhProfilers")) {
+        profilers = project.property("jmhProfilers").toString().split(",")
+    }
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
@@ -143,6 +162,40 @@ tasks.jar {
     manifest.attributes["Main-Class"] = "tanin.wait.Main"
 }
 
+// Run with `./gradlew appCdsArchive`. Runs the training workload `tanin.wait.AppCdsTraining` from the fat JAR, and
+// records the classes that it loads into an AppCDS archive next to the JAR. Start the JAR with `-XX:SharedArchiveFile=<archive>` to use it.
+// The archive only works with the same JDK and the same JAR.
+val appCdsArchiveFile = layout.buildDirectory.file("libs/${project.name}-${project.version}.jsa")
+val fatJar = tasks.shadowJar.flatMap { it.archiveFile }
+
+tasks.register<JavaExec>("appCdsArchive") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("tanin.wait.StartupTimer")
+    inputs.file(fatJar)
+    outputs.file(appCdsArchiveFile)
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("train", fatJar.get().asFile.absolutePath, appCdsArchiveFile.get().asFile.absolutePath)
+    })
+}
+
+// Run with `./gradlew measureStartup`. It isn't part of `build`, because it starts several JVMs. Measures the time to the first response and to the
+// first successful signup of a fresh JVM, without the warm-up, with it, and with it and the AppCDS archive.
+tasks.register<JavaExec>("measureStartup") {
+    dependsOn("appCdsArchive")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("tanin.wait.StartupTimer")
+    inputs.file(fatJar)
+    outputs.file(layout.buildDirectory.file("results/startup/startup.json"))
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(
+            "measure",
+            fatJar.get().asFile.absolutePath,
+            appCdsArchiveFile.get().asFile.absolutePath,
+            layout.buildDirectory.file("results/startup/startup.json").get().asFile.absolutePath
+        )
+    })
+}
+
 // For CI validation.
 tasks.register("printVersion") {
     doLast {
@@ -0,0 +1,47 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and signing the JWT that is exchanged for an access token. This is what every signup paid before
+ * tokens were cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class AccessTokenBenchmark {
+  String privateKeyPem;
+  HttpClient client;
+  AccessTokenManager manager;
+
+  @Setup
+  public void setUp() throws Exception {
+    privateKeyPem = StubGoogleServer.generatePrivateKeyPem();
+    client = HttpClient.newHttpClient();
+    manager = new AccessTokenManager("benchmark@example.com", privateKeyPem, client, Duration.ofSeconds(5));
+  }
+
+  @TearDown
+  public void tearDown() {
+    manager.close();
+    client.close();
+  }
+
+  @Benchmark
+  public String buildJwt() throws Exception {
+    return manager.buildJwt(Instant.now());
+  }
+
+  @Benchmark
+  public Object parsePrivateKey() {
+    return AccessTokenManager.loadRsaPrivateKey(privateKeyPem);
+  }
+}
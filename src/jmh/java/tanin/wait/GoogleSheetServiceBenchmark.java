@@ -0,0 +1,56 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load harness for the outbound path against the local stub. The sample mode reports the latency percentiles
+ * (p50, p99, ...), and the stub reports how many connections were opened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+public class GoogleSheetServiceBenchmark {
+  @Param({"HTTP_1_1", "HTTP_2"})
+  public String httpVersion;
+
+  StubGoogleServer stub;
+  GoogleSheetService service;
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    stub.recordAppendedRows = false;
+    service = new GoogleSheetService(
+      "benchmark@example.com",
+      StubGoogleServer.generatePrivateKeyPem(),
+      WaitConfig.builder()
+        .httpClient(new HttpClientConfig(HttpClient.Version.valueOf(httpVersion), Duration.ofSeconds(5), Duration.ofSeconds(15)))
+        .googleEndpoints(stub.endpoints())
+        .build()
+    );
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.out.println(
+      "\nAppends: " + stub.appendRequests.get() +
+        ", token requests: " + stub.tokenRequests.get() +
+        ", connections: " + stub.clientConnections.size()
+    );
+    service.close();
+    stub.close();
+  }
+
+  @Benchmark
+  public void write() {
+    service.write("sheet-id", "Sheet1", "someone@example.com", "launch-page");
+  }
+}
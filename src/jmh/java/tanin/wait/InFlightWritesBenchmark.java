@@ -0,0 +1,113 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds many signups in flight at once against the stub, which keeps every append for a second. The blocking mode
+ * parks a virtual thread on each write, as the request threads do. The async mode only keeps the futures.
+ *
+ * While every write is in flight, it prints the live heap and the platform threads in use: the carriers of virtual
+ * threads and the workers of the HTTP client. The stub's own threads are left out. Each write holds one connection, so
+ * raise `ulimit -n` above twice the number of writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class InFlightWritesBenchmark {
+  @Param({"blocking", "async"})
+  public String mode;
+
+  @Param({"10000"})
+  public int inFlight;
+
+  static final List<Signup> SIGNUPS = List.of(new Signup("someone@example.com", "launch-page"));
+
+  StubGoogleServer stub;
+  GoogleSheetService service;
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    stub.recordAppendedRows = false;
+    stub.appendLatencyMillis = 1000;
+    service = new GoogleSheetService(
+      "benchmark@example.com",
+      StubGoogleServer.generatePrivateKeyPem(),
+      WaitConfig.builder()
+        .httpClient(new HttpClientConfig(HttpClient.Version.HTTP_1_1, Duration.ofSeconds(5), Duration.ofSeconds(60)))
+        .retry(new RetryConfig(1, Duration.ofMillis(200), Duration.ofSeconds(5), Duration.ofSeconds(60)))
+        .circuitBreaker(new CircuitBreakerConfig(false, 0.5, 20, 10, Duration.ofSeconds(30)))
+        // Every write must be in flight at once.
+        .concurrencyLimit(new ConcurrencyLimitConfig(false, 10, 1, 50, Duration.ofSeconds(2), 0.5, Duration.ofSeconds(10)))
+        .googleEndpoints(stub.endpoints())
+        .build()
+    );
+    // Fetches the token up front so that every run only measures the appends.
+    service.getAccessToken();
+  }
+
+  @TearDown
+  public void tearDown() {
+    service.close();
+    stub.close();
+  }
+
+  @Benchmark
+  public void writeAll() throws Exception {
+    var appendsBefore = stub.appendRequests.get();
+    var futures = new ArrayList<CompletableFuture<Void>>(inFlight);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < inFlight; i++) {
+        if (mode.equals("async")) {
+          futures.add(service.appendAsync("sheet-id", "Sheet1", SIGNUPS));
+        } else {
+          futures.add(CompletableFuture.runAsync(() -> service.append("sheet-id", "Sheet1", SIGNUPS), executor));
+        }
+      }
+
+      var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (stub.appendRequests.get() - appendsBefore < inFlight && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      printUsage();
+
+      CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+  }
+
+  private void printUsage() {
+    System.gc();
+    var heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+    var carriers = 0;
+    var httpClientWorkers = 0;
+    for (var thread : Thread.getAllStackTraces().keySet()) {
+      var name = thread.getName();
+      if (name.startsWith("ForkJoinPool-")) {
+        carriers++;
+      } else if (name.startsWith("HttpClient-")) {
+        httpClientWorkers++;
+      }
+    }
+
+    System.out.println(
+      "\n" + mode + ": " + inFlight + " writes in flight" +
+        ", live heap: " + (heapBytes / 1024 / 1024) + " MB" +
+        ", carrier threads: " + carriers +
+        ", HTTP client threads: " + httpClientWorkers
+    );
+  }
+}
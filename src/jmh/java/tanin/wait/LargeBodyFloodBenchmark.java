@@ -0,0 +1,115 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Floods `POST /write` with clients that each announce a large body and start sending it, and prints the peak heap of
+ * the run. The server answers 413 from the headers, so the peak stays flat however large the bodies are. Each client
+ * holds one connection, so raise `ulimit -n` above the number of clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LargeBodyFloodBenchmark {
+  static final int PORT = 9098;
+  static final int CHUNK_BYTES = 64 * 1024;
+  static final String RESET = "reset";
+
+  @Param({"1000"})
+  public int clients;
+
+  @Param({"10"})
+  public int bodyMegabytes;
+
+  StubGoogleServer stub;
+  WaitServer server;
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    stub.recordAppendedRows = false;
+    server = new WaitServer(
+      PORT,
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      WaitConfig.builder().googleEndpoints(stub.endpoints()).build()
+    );
+    server.start();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop();
+    stub.close();
+  }
+
+  @Benchmark
+  public void flood() throws Exception {
+    System.gc();
+    var heapPools = ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+    heapPools.forEach(pool -> pool.resetPeakUsage());
+
+    var chunk = new byte[CHUNK_BYTES];
+    var rejected = 0;
+    var reset = 0;
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var statusLines = new ArrayList<Future<String>>(clients);
+      for (int i = 0; i < clients; i++) {
+        statusLines.add(executor.submit(() -> send(chunk)));
+      }
+      for (var statusLine : statusLines) {
+        var line = statusLine.get();
+        if (line.startsWith("HTTP/1.1 413 ")) {
+          rejected++;
+        } else if (line.equals(RESET)) {
+          reset++;
+        }
+      }
+    }
+
+    var peakBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    System.out.println(
+      "\n" + clients + " bodies of " + bodyMegabytes + " MB: " + rejected + " got 413, " + reset + " were reset, peak heap: " + (peakBytes / 1024 / 1024) + " MB"
+    );
+  }
+
+  /**
+   * Sends the headers and the first chunk of the body, then reads the status line. The server may close the
+   * connection with the chunk unread, which resets it and can discard the response.
+   */
+  private String send(byte[] chunk) throws Exception {
+    try (var socket = new Socket("localhost", PORT)) {
+      socket.setSoTimeout(10_000);
+      var out = socket.getOutputStream();
+      out.write((
+        "POST /write HTTP/1.1\r\n" +
+          "Host: localhost\r\n" +
+          "Content-Type: application/json\r\n" +
+          "Content-Length: " + (long) bodyMegabytes * 1024 * 1024 + "\r\n" +
+          "\r\n"
+      ).getBytes(StandardCharsets.US_ASCII));
+      out.write(chunk);
+      out.flush();
+      var statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+      return statusLine == null ? "" : statusLine;
+    } catch (SocketException e) {
+      return RESET;
+    }
+  }
+}
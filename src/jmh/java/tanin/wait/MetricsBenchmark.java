@@ -0,0 +1,58 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost that the metrics add to every request: reading the clock and recording the latency and the status.
+ * Run it with `-prof gc` to confirm that recording doesn't allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class MetricsBenchmark {
+  Metrics metrics;
+  Metrics.Histogram histogram;
+  WaitServer.RouteMetrics route;
+
+  @Setup
+  public void setUp() {
+    metrics = new Metrics();
+    histogram = metrics.histogram("latency_seconds", "Latency");
+    route = new WaitServer.RouteMetrics(metrics, "POST", "write");
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long nanoTimeOnly() {
+    return System.nanoTime();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void recordHistogram() {
+    histogram.recordSince(System.nanoTime() - 3_000_000);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void recordRouteUncontended() {
+    route.record(200, System.nanoTime() - 3_000_000);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void recordRouteContended() {
+    route.record(200, System.nanoTime() - 3_000_000);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String render() {
+    return metrics.render();
+  }
+}
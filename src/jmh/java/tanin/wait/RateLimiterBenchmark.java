@@ -0,0 +1,55 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the allowed path of {@link RateLimiter} with and without contention on a single bucket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class RateLimiterBenchmark {
+  static final int KEY_COUNT = 16384;
+
+  RateLimiter limiter;
+  String[] keys;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int next = 0;
+  }
+
+  @Setup
+  public void setUp() {
+    // High enough that every request is allowed, so only the bookkeeping is measured.
+    limiter = new RateLimiter("benchmark", 1e9, 1_000_000, KEY_COUNT * 2, Duration.ofMinutes(1));
+    keys = new String[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Duration singleKeyUncontended() {
+    return limiter.tryAcquire("10.0.0.1");
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Duration singleKeyContended() {
+    return limiter.tryAcquire("10.0.0.1");
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Duration manyKeys(ThreadState state) {
+    return limiter.tryAcquire(keys[(state.next++) & (KEY_COUNT - 1)]);
+  }
+}
@@ -0,0 +1,74 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+/**
+ * The request throughput of a Wait server with the request log off, written synchronously by a {@link
+ * java.util.logging.FileHandler} as the JDK's handlers do, and written through {@link AsyncLogHandler}. The log goes to
+ * a temporary file so that the benchmark's own output stays readable. `GET /healthcheck` does nothing else, so the cost
+ * of logging dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(64)
+public class RequestLogBenchmark {
+  static final int PORT = 9093;
+
+  @Param({"off", "sync", "async"})
+  public String logging;
+
+  WaitServer server;
+  HttpClient client;
+  HttpRequest request;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new WaitServer(PORT, new SignupSink() {
+      @Override
+      public void write(List<Signup> signups) {}
+    }, WaitConfig.builder().deduplication(new DeduplicationConfig(false, false, 10000)).build());
+
+    var logFile = Files.createTempDirectory("wait-log").resolve("wait.%g.log").toString();
+    var format = "java.util.logging.SimpleFormatter.format=%4$s %1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS.%1$tL %3$s - %5$s%6$s%n\n";
+    var properties = switch (logging) {
+      case "off" -> ".level=OFF\n";
+      case "sync" -> "handlers=java.util.logging.FileHandler\n.level=INFO\n" +
+        "java.util.logging.FileHandler.pattern=" + logFile + "\n" +
+        "java.util.logging.FileHandler.formatter=java.util.logging.SimpleFormatter\n" + format;
+      default -> "handlers=tanin.wait.AsyncLogHandler\n.level=INFO\n" +
+        "tanin.wait.AsyncLogHandler.file=" + logFile + "\n" + format;
+    };
+    LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(properties.getBytes(StandardCharsets.ISO_8859_1)));
+
+    server.start();
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    request = HttpRequest.newBuilder().uri(URI.create("http://localhost:" + PORT + "/healthcheck")).GET().build();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    server.stop();
+    client.close();
+    LogManager.getLogManager().readConfiguration(WaitServer.class.getResourceAsStream("/wait_logging.properties"));
+  }
+
+  @Benchmark
+  public int healthcheck() throws Exception {
+    return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+}
@@ -0,0 +1,176 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of the JAR in a fresh JVM, against a stub of Google in this JVM. Its `train` and `measure`
+ * commands back `./gradlew appCdsArchive` and `./gradlew measureStartup`.
+ */
+public class StartupTimer {
+  static final int RUNS = 5;
+  static final Duration START_TIMEOUT = Duration.ofSeconds(60);
+
+  record Run(long firstByteMillis, long firstWriteMillis) {}
+
+  record Variant(String name, boolean warmUp, List<String> jvmArgs) {}
+
+  public static void main(String[] args) throws Exception {
+    switch (args[0]) {
+      case "train" -> train(Path.of(args[1]), Path.of(args[2]));
+      case "measure" -> measure(Path.of(args[1]), Path.of(args[2]), Path.of(args[3]));
+      default -> throw new IllegalArgumentException("Unknown command: " + args[0]);
+    }
+  }
+
+  static void train(Path jar, Path archive) throws Exception {
+    Files.deleteIfExists(archive);
+    // The same workload as the Docker image's, so that both archives hold the same classes.
+    var process = new ProcessBuilder(
+      ProcessHandle.current().info().command().orElse("java"),
+      "-XX:ArchiveClassesAtExit=" + archive,
+      "-cp", jar.toAbsolutePath().toString(),
+      "tanin.wait.AppCdsTraining"
+    )
+      .inheritIO()
+      .start();
+    if (!process.waitFor(START_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+      process.destroyForcibly();
+      throw new IllegalStateException("The training didn't finish within " + START_TIMEOUT);
+    }
+    if (process.exitValue() != 0) {
+      throw new IllegalStateException("The training exited with " + process.exitValue());
+    }
+    if (!Files.exists(archive) || Files.size(archive) == 0) {
+      throw new IllegalStateException("The JVM didn't write the AppCDS archive to " + archive);
+    }
+    System.out.println("Wrote the AppCDS archive to " + archive + " (" + Files.size(archive) / 1024 + " KB)");
+  }
+
+  static void measure(Path jar, Path archive, Path results) throws Exception {
+    var variants = List.of(
+      new Variant("noWarmUp", false, List.of()),
+      new Variant("warmUp", true, List.of()),
+      new Variant("warmUpAndAppCds", true, List.of("-XX:SharedArchiveFile=" + archive))
+    );
+
+    var json = Json.object().add("runs", RUNS);
+    try (var stub = new StubGoogleServer()) {
+      stub.recordAppendedRows = false;
+      var env = Map.of(
+        "GOOGLE_SHEET_SERVICE_ACCOUNT_KEY_JSON", StubGoogleServer.generateServiceAccountKeyJson(),
+        "GOOGLE_SHEET_ID", "stub-sheet-id",
+        "GOOGLE_SHEET_NAME", "Sheet1",
+        "GOOGLE_OAUTH_TOKEN_URL", stub.tokenUrl(),
+        "GOOGLE_SHEETS_BASE_URL", stub.baseUrl()
+      );
+      for (var variant : variants) {
+        var firstBytes = new long[RUNS];
+        var firstWrites = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+          var variantEnv = new HashMap<>(env);
+          variantEnv.put("STARTUP_WARM_UP", "" + variant.warmUp());
+          var run = run(jar, variant.jvmArgs(), variantEnv);
+          firstBytes[i] = run.firstByteMillis();
+          firstWrites[i] = run.firstWriteMillis();
+        }
+
+        var firstByte = median(firstBytes);
+        var firstWrite = median(firstWrites);
+        System.out.printf("%-16s time to first byte: %5d ms, time to first write: %5d ms%n", variant.name(), firstByte, firstWrite);
+        json.add(variant.name(), Json.object().add("timeToFirstByteMillis", firstByte).add("timeToFirstWriteMillis", firstWrite));
+      }
+    }
+
+    Files.createDirectories(results.getParent());
+    Files.writeString(results, json.toString());
+    System.out.println("The medians of " + RUNS + " runs are written to " + results);
+  }
+
+  static Run run(Path jar, List<String> jvmArgs, Map<String, String> env) throws Exception {
+    var port = findFreePort();
+    // An empty working directory, so that no local ./secrets file changes the settings.
+    var workingDirectory = Files.createTempDirectory("wait-startup");
+    var log = workingDirectory.resolve("server.log");
+
+    var command = new ArrayList<String>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    command.addAll(jvmArgs);
+    command.addAll(List.of("-jar", jar.toAbsolutePath().toString()));
+
+    var builder = new ProcessBuilder(command)
+      .directory(workingDirectory.toFile())
+      .redirectErrorStream(true)
+      .redirectOutput(log.toFile());
+    builder.environment().put("PORT", "" + port);
+    builder.environment().putAll(env);
+
+    var startNanos = System.nanoTime();
+    var process = builder.start();
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(1)).build()) {
+      var baseUrl = "http://localhost:" + port;
+
+      awaitOk(client, process, log, HttpRequest.newBuilder(URI.create(baseUrl + "/healthcheck")).GET().build());
+      var firstByteMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      awaitOk(client, process, log, HttpRequest.newBuilder(URI.create(baseUrl + "/write"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", "startup@example.com").add("group", "startup").toString()))
+        .build());
+      var firstWriteMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      return new Run(firstByteMillis, firstWriteMillis);
+    } finally {
+      // SIGTERM, so that the server shuts down gracefully.
+      process.destroy();
+      if (!process.waitFor(30, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  private static void awaitOk(HttpClient client, Process process, Path log, HttpRequest request) throws Exception {
+    var deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("The server exited with " + process.exitValue() + ". See " + log);
+      }
+      try {
+        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+          return;
+        }
+      } catch (IOException e) {
+        // The port isn't bound yet.
+      }
+      Thread.sleep(2);
+    }
+    throw new IllegalStateException(request.method() + " " + request.uri() + " didn't succeed within " + START_TIMEOUT + ". See " + log);
+  }
+
+  private static int findFreePort() throws IOException {
+    try (var socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static long median(long[] values) {
+    var sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
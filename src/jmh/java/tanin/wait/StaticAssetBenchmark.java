@@ -0,0 +1,42 @@
+package tanin.wait;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the landing page on every request, as `GET /` used to, with picking a prebuilt variant. Run it with
+ * `-prof gc` to see the allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class StaticAssetBenchmark {
+  StaticAsset asset;
+
+  @Setup
+  public void setUp() {
+    asset = StaticAsset.load("/html/index.html", "text/html; charset=UTF-8");
+  }
+
+  @Benchmark
+  public String readOnEveryRequest() throws IOException {
+    try (var stream = StaticAsset.class.getResourceAsStream("/html/index.html")) {
+      return new String(stream.readAllBytes());
+    }
+  }
+
+  @Benchmark
+  public Object selectFromBrowserHeader() {
+    return asset.select("gzip, deflate, br, zstd");
+  }
+
+  @Benchmark
+  public boolean checkIfNoneMatch() {
+    return asset.isNotModified("\"0123456789012345678901-gzip\"");
+  }
+}
@@ -0,0 +1,104 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sustained-throughput harness for `POST /write`, end to end: a Wait server writing to the local stub of the Google
+ * APIs. The stub adds {@link #googleLatencyMillis} to every call to resemble the real API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+public class WaitServerBenchmark {
+  static final int PORT = 9092;
+
+  @Param({"sync", "writeBehind", "journal"})
+  public String mode;
+
+  @Param({"100"})
+  public long googleLatencyMillis;
+
+  // 0 means unbounded. See "Tuning the server" in the README.
+  @Param({"0"})
+  public int maxConcurrentRequests;
+
+  StubGoogleServer stub;
+  WaitServer server;
+  HttpClient client;
+  final AtomicLong counter = new AtomicLong();
+  final AtomicLong shed = new AtomicLong();
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    stub.recordAppendedRows = false;
+    stub.appendLatencyMillis = googleLatencyMillis;
+
+    var writeBehind = WriteBehindConfig.DEFAULT;
+    var enabledWriteBehind = new WriteBehindConfig(
+      true, writeBehind.capacity(), writeBehind.maxBatchSize(), writeBehind.flushInterval(), writeBehind.enqueueTimeout()
+    );
+    var config = WaitConfig.builder()
+      .googleEndpoints(stub.endpoints())
+      .deduplication(new DeduplicationConfig(true, false, 10000))
+      .server(new ServerConfig(
+        ServerConfig.DEFAULT.keepAliveTimeout(), ServerConfig.DEFAULT.socketTimeout(), ServerConfig.DEFAULT.maxReadBytes(), maxConcurrentRequests
+      ))
+      .build();
+    switch (mode) {
+      case "writeBehind" -> config = config.toBuilder().writeBehind(enabledWriteBehind).build();
+      case "journal" -> config = config.toBuilder().journal(
+        new JournalConfig(true, Files.createTempDirectory("wait-journal").toString(), JournalConfig.DEFAULT.maxSegmentBytes())
+      ).build();
+      default -> {}
+    }
+
+    server = new WaitServer(PORT, StubGoogleServer.generateServiceAccountKeyJson(), "sheet-id", "Sheet1", config);
+    server.start();
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop();
+    System.out.println(
+      "\nAppends: " + stub.appendRequests.get() + ", signups: " + counter.get() + ", shed: " + shed.get()
+    );
+    client.close();
+    stub.close();
+  }
+
+  @Benchmark
+  public int write() throws Exception {
+    var body = Json.object()
+      .add("email", "someone" + counter.incrementAndGet() + "@example.com")
+      .add("group", "launch-page")
+      .toString();
+    var request = HttpRequest.newBuilder()
+      .uri(URI.create("http://localhost:" + PORT + "/write"))
+      .timeout(Duration.ofSeconds(30))
+      .header("Content-Type", "application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(body))
+      .build();
+
+    var status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    if (status == 503) {
+      shed.incrementAndGet();
+    }
+    return status;
+  }
+}
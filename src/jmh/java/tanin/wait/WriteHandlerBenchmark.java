@@ -0,0 +1,116 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU-bound pieces of `POST /write`: parsing and validating the body, picking the CORS headers, and building
+ * the body of the append call. Run it with `-PjmhProfilers=gc` to see the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseParallelGC"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class WriteHandlerBenchmark {
+  String validBody;
+  String invalidBody;
+  byte[] validBodyBytes;
+  byte[] invalidBodyBytes;
+  List<Signup> oneSignup;
+  List<Signup> hundredSignups;
+  CorsPolicy anyOriginCors;
+  CorsPolicy allowlistCors;
+
+  @Setup
+  public void setUp() {
+    validBody = Json.object().add("email", "  someone@example.com ").add("group", "launch-page").toString();
+    invalidBody = Json.object().add("email", "someone").add("group", "launch-page").toString();
+    validBodyBytes = validBody.getBytes(StandardCharsets.UTF_8);
+    invalidBodyBytes = invalidBody.getBytes(StandardCharsets.UTF_8);
+    oneSignup = List.of(new Signup("someone@example.com", "launch-page"));
+    anyOriginCors = new CorsPolicy(CorsConfig.DEFAULT);
+    allowlistCors = new CorsPolicy(new CorsConfig(List.of("https://example.com", "https://*.example.org"), Duration.ofHours(2)));
+    hundredSignups = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      hundredSignups.add(new Signup("someone" + i + "@example.com", "launch-page"));
+    }
+  }
+
+  /**
+   * The parsing that `POST /write` did before {@link WriteRequestParser}: decode the body, build a JSON tree and check
+   * for an `@`. Kept as the baseline.
+   */
+  static Signup parseWithJsonTree(byte[] body) {
+    var json = Json.parse(new String(body, StandardCharsets.UTF_8)).asObject();
+    var email = Helpers.getStringOrNull(json, "email");
+    var group = Helpers.getStringOrNull(json, "group");
+
+    if (email != null) { email = email.trim(); }
+    if (group != null) { group = group.trim(); }
+
+    if (email == null || email.isBlank() || !email.contains("@")) {
+      return null;
+    }
+
+    return new Signup(email, group);
+  }
+
+  @Benchmark
+  public Signup parseValidBodyWithJsonTree() {
+    return parseWithJsonTree(validBodyBytes);
+  }
+
+  @Benchmark
+  public Signup parseInvalidBodyWithJsonTree() {
+    return parseWithJsonTree(invalidBodyBytes);
+  }
+
+  @Benchmark
+  public Signup parseValidBody() {
+    return WriteRequestParser.parse(validBodyBytes, WriteRequestConfig.DEFAULT.maxFieldLength());
+  }
+
+  @Benchmark
+  public Signup parseInvalidBody() {
+    return WriteRequestParser.parse(invalidBodyBytes, WriteRequestConfig.DEFAULT.maxFieldLength());
+  }
+
+  @Benchmark
+  public Map<String, String> corsHeadersForAnyOrigin() {
+    return anyOriginCors.headersFor("https://example.com").json();
+  }
+
+  @Benchmark
+  public Map<String, String> corsHeadersForAllowedOrigin() {
+    return allowlistCors.headersFor("https://example.com").json();
+  }
+
+  @Benchmark
+  public Map<String, String> corsHeadersForWildcardOrigin() {
+    return allowlistCors.headersFor("https://landing.example.org").json();
+  }
+
+  @Benchmark
+  public Map<String, String> corsHeadersMerged() {
+    return allowlistCors.addTo(Map.of("Content-Type", "application/json", "Retry-After", "1"), "https://example.com");
+  }
+
+  @Benchmark
+  public String buildAppendBodyForOneRow() {
+    return GoogleSheetService.buildAppendBody(oneSignup);
+  }
+
+  @Benchmark
+  public String buildAppendBodyForHundredRows() {
+    return GoogleSheetService.buildAppendBody(hundredSignups);
+  }
+}
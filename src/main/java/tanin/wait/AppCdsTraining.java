@@ -0,0 +1,58 @@
+package tanin.wait;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The workload that an AppCDS archive is recorded from. Run it with `-XX:ArchiveClassesAtExit=<archive>`.
+ */
+public class AppCdsTraining {
+  private static final Logger logger = Logger.getLogger(AppCdsTraining.class.getName());
+
+  public static void main(String[] args) throws Exception {
+    int port;
+    try (var socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+
+    // The signups go nowhere, so that no credentials or network are needed.
+    SignupSink sink = signups -> {};
+    var server = new WaitServer(port, sink, WaitConfig.DEFAULT);
+    server.start();
+
+    var baseUrl = "http://localhost:" + port;
+    var requests = List.of(
+      HttpRequest.newBuilder(URI.create(baseUrl + "/healthcheck")).GET().build(),
+      HttpRequest.newBuilder(URI.create(baseUrl + "/")).GET().build(),
+      HttpRequest.newBuilder(URI.create(baseUrl + "/write")).method("OPTIONS", HttpRequest.BodyPublishers.noBody()).build(),
+      HttpRequest.newBuilder(URI.create(baseUrl + "/write"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"training@example.com\",\"group\":\"training\"}"))
+        .build(),
+      HttpRequest.newBuilder(URI.create(baseUrl + "/metrics")).GET().build()
+    );
+    var exitCode = 0;
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build()) {
+      for (var request : requests) {
+        var status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status / 100 != 2) {
+          throw new IllegalStateException(request.method() + " " + request.uri() + " returned " + status);
+        }
+      }
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "The training workload failed", e);
+      exitCode = 1;
+    } finally {
+      server.stop();
+    }
+    // Minum's threads would keep the JVM alive, and the archive is only written once it exits.
+    System.exit(exitCode);
+  }
+}
@@ -0,0 +1,173 @@
+package tanin.wait;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.FileHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * A log handler that hands records to a single writer thread through a bounded buffer, so that logging threads never
+ * wait on stdout or on the disk. Its settings are in `wait_logging.properties`.
+ */
+public class AsyncLogHandler extends Handler {
+  public enum OverflowPolicy { DROP, BLOCK }
+
+  static final int BATCH_SIZE = 256;
+  private static final long POLL_MILLIS = 100;
+
+  private final Handler target;
+  private final ArrayBlockingQueue<LogRecord> buffer;
+  private final OverflowPolicy overflowPolicy;
+  private final Thread writer;
+  final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong unreportedDrops = new AtomicLong();
+  private volatile boolean closed = false;
+
+  /**
+   * Reads the settings from the {@link LogManager}. This is the constructor that `handlers=` in the properties uses.
+   */
+  public AsyncLogHandler() throws IOException {
+    this(
+      buildTarget(property("file", ""), Integer.parseInt(property("fileLimitBytes", "10485760")), Integer.parseInt(property("fileCount", "5"))),
+      Integer.parseInt(property("capacity", "8192")),
+      OverflowPolicy.valueOf(property("overflowPolicy", "DROP").toUpperCase())
+    );
+    setLevel(Level.parse(property("level", "INFO")));
+  }
+
+  AsyncLogHandler(Handler target, int capacity, OverflowPolicy overflowPolicy) {
+    this.target = target;
+    this.buffer = new ArrayBlockingQueue<>(capacity);
+    this.overflowPolicy = overflowPolicy;
+    // A platform thread, so that it keeps writing while every carrier thread is busy.
+    this.writer = Thread.ofPlatform().name("async-log-writer").daemon().start(this::run);
+  }
+
+  private static String property(String name, String defaultValue) {
+    var value = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + "." + name);
+    return value == null || value.isBlank() ? defaultValue : value.trim();
+  }
+
+  private static Handler buildTarget(String file, int limitBytes, int count) throws IOException {
+    Handler target;
+    if (file.isEmpty()) {
+      target = new StreamHandler(System.out, new SimpleFormatter()) {
+        // Like ConsoleHandler, it must not close stdout.
+        @Override
+        public synchronized void close() {
+          flush();
+        }
+      };
+    } else {
+      target = new FileHandler(file, limitBytes, count, true);
+    }
+    target.setFormatter(new SimpleFormatter());
+    target.setLevel(Level.ALL);
+    return target;
+  }
+
+  @Override
+  public void publish(LogRecord record) {
+    if (!isLoggable(record)) {
+      return;
+    }
+    if (closed) {
+      // The JDK closes the handlers in a shutdown hook that runs alongside ours. Writing directly keeps the last lines
+      // of a graceful shutdown.
+      target.publish(record);
+      target.flush();
+      return;
+    }
+
+    if (overflowPolicy == OverflowPolicy.BLOCK) {
+      try {
+        buffer.put(record);
+        return;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    } else if (buffer.offer(record)) {
+      return;
+    }
+
+    droppedCount.incrementAndGet();
+    unreportedDrops.incrementAndGet();
+  }
+
+  private void run() {
+    var batch = new ArrayList<LogRecord>(BATCH_SIZE);
+
+    while (true) {
+      LogRecord first;
+      try {
+        first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        first = null;
+      }
+
+      if (first == null) {
+        reportDrops();
+        if (closed && buffer.isEmpty()) {
+          return;
+        }
+        continue;
+      }
+
+      batch.add(first);
+      buffer.drainTo(batch, BATCH_SIZE - 1);
+      try {
+        for (var record : batch) {
+          target.publish(record);
+        }
+        reportDrops();
+        target.flush();
+      } catch (Exception e) {
+        reportError("Unable to write log records", e, ErrorManager.WRITE_FAILURE);
+      }
+      batch.clear();
+    }
+  }
+
+  private void reportDrops() {
+    var drops = unreportedDrops.getAndSet(0);
+    if (drops > 0) {
+      var record = new LogRecord(Level.WARNING, "Dropped " + drops + " log record(s) because the log buffer was full");
+      record.setLoggerName(AsyncLogHandler.class.getName());
+      target.publish(record);
+      target.flush();
+    }
+  }
+
+  int buffered() {
+    return buffer.size();
+  }
+
+  /**
+   * Records are flushed by the writer after each batch.
+   */
+  @Override
+  public void flush() {}
+
+  /**
+   * Writes whatever is buffered, then closes the target.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    target.close();
+  }
+}
@@ -0,0 +1,191 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * A count-based circuit breaker. It opens when the failure rate over the most recent calls crosses the threshold,
+ * rejects calls while open, then lets a single probe through. The probe's outcome closes or reopens the circuit.
+ */
+public class CircuitBreaker {
+  private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  public static class OpenException extends RuntimeException {
+    public final Duration retryAfter;
+
+    public OpenException(Duration retryAfter) {
+      super("The circuit breaker is open. Google API calls are paused for " + retryAfter.toMillis() + "ms.");
+      this.retryAfter = retryAfter;
+    }
+  }
+
+  /**
+   * A call let through by {@link #acquire()}. Only the outcome of a call let through since the last change of state
+   * counts, and only the probe's outcome ends the half-open state.
+   */
+  public record Permit(long generation, boolean probe) {}
+
+  private static final Permit DISABLED = new Permit(-1, false);
+
+  private final CircuitBreakerConfig config;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Guarded by lock.
+  private final boolean[] window;
+  private int windowIndex = 0;
+  private int calls = 0;
+  private int failures = 0;
+  private State state = State.CLOSED;
+  private long openUntilNanos = 0;
+  private boolean probeInFlight = false;
+  private long generation = 0;
+  // Shared by the calls let through while closed.
+  private Permit closedPermit = new Permit(0, false);
+
+  public CircuitBreaker(CircuitBreakerConfig config) {
+    this.config = config;
+    this.window = new boolean[config.windowSize()];
+  }
+
+  /**
+   * Throws {@link OpenException} when the call must not go out.
+   */
+  public Permit acquire() {
+    if (!config.enabled()) {
+      return DISABLED;
+    }
+
+    lock.lock();
+    try {
+      switch (state) {
+        case CLOSED -> {
+          return closedPermit;
+        }
+        case OPEN -> {
+          var remaining = openUntilNanos - System.nanoTime();
+          if (remaining > 0) {
+            throw new OpenException(Duration.ofNanos(remaining));
+          }
+          state = State.HALF_OPEN;
+        }
+        case HALF_OPEN -> {
+          if (probeInFlight) {
+            throw new OpenException(config.openDuration());
+          }
+        }
+      }
+      probeInFlight = true;
+      nextGeneration();
+      return new Permit(generation, true);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void onSuccess(Permit permit) {
+    record(permit, false);
+  }
+
+  public void onFailure(Permit permit) {
+    record(permit, true);
+  }
+
+  /**
+   * Ends a call that has no outcome because it was cancelled. Only a probe has to be released, so that the next call
+   * can probe.
+   */
+  public void onCancel(Permit permit) {
+    if (!permit.probe()) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (permit.generation() == generation && state == State.HALF_OPEN) {
+        probeInFlight = false;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void record(Permit permit, boolean failed) {
+    if (permit == DISABLED) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (permit.generation() != generation) {
+        // A call that started before the last change of state, e.g. before the circuit opened or the probe went out.
+        return;
+      }
+
+      if (state == State.HALF_OPEN) {
+        if (!permit.probe()) {
+          return;
+        }
+        probeInFlight = false;
+        if (failed) {
+          open();
+        } else {
+          logger.info("The circuit breaker is closed.");
+          state = State.CLOSED;
+          nextGeneration();
+          resetWindow();
+        }
+        return;
+      }
+
+      if (calls == window.length) {
+        if (window[windowIndex]) {
+          failures--;
+        }
+      } else {
+        calls++;
+      }
+      window[windowIndex] = failed;
+      if (failed) {
+        failures++;
+      }
+      windowIndex = (windowIndex + 1) % window.length;
+
+      if (calls >= config.minimumCalls() && failures >= config.failureRateThreshold() * calls) {
+        open();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void open() {
+    logger.warning("The circuit breaker is open for " + config.openDuration() + ".");
+    state = State.OPEN;
+    openUntilNanos = System.nanoTime() + config.openDuration().toNanos();
+    nextGeneration();
+    resetWindow();
+  }
+
+  private void nextGeneration() {
+    generation++;
+    closedPermit = new Permit(generation, false);
+  }
+
+  private void resetWindow() {
+    windowIndex = 0;
+    calls = 0;
+    failures = 0;
+  }
+
+  public State state() {
+    lock.lock();
+    try {
+      return state;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
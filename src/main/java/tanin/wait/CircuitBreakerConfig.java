@@ -0,0 +1,27 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the circuit breaker around Google API calls.
+ *
+ * @param failureRateThreshold the fraction of failed calls within the window that opens the circuit
+ * @param windowSize the number of most recent calls that the failure rate is computed over
+ * @param minimumCalls the number of calls needed in the window before the circuit can open
+ * @param openDuration how long the circuit stays open before a single probe call is let through
+ */
+public record CircuitBreakerConfig(
+  boolean enabled,
+  double failureRateThreshold,
+  int windowSize,
+  int minimumCalls,
+  Duration openDuration
+) {
+  public static final CircuitBreakerConfig DEFAULT = new CircuitBreakerConfig(
+    true,
+    0.5,
+    20,
+    10,
+    Duration.ofSeconds(30)
+  );
+}
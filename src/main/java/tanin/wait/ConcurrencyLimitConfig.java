@@ -0,0 +1,31 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the adaptive limit on the calls to the Sheets API in flight.
+ *
+ * @param initialLimit the limit at the start. It grows by one per limit's worth of fast successes, up to maxLimit.
+ * @param latencyThreshold a call slower than this lowers the limit like a 429 does
+ * @param backoffRatio what the limit is multiplied by on a 429, a 5xx, an I/O error or a slow call
+ * @param maxQueueWait how long a call waits for a free slot before it fails. The call timeout may cut it shorter.
+ */
+public record ConcurrencyLimitConfig(
+  boolean enabled,
+  int initialLimit,
+  int minLimit,
+  int maxLimit,
+  Duration latencyThreshold,
+  double backoffRatio,
+  Duration maxQueueWait
+) {
+  public static final ConcurrencyLimitConfig DEFAULT = new ConcurrencyLimitConfig(
+    true,
+    10,
+    1,
+    50,
+    Duration.ofSeconds(2),
+    0.5,
+    Duration.ofSeconds(10)
+  );
+}
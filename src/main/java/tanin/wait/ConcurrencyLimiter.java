@@ -0,0 +1,177 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the calls in flight, and adapts the bound to what the other side can take (AIMD). The calls over the limit
+ * wait in a FIFO queue without holding a thread.
+ */
+class ConcurrencyLimiter {
+  static class QueueTimeoutException extends RuntimeException {
+    QueueTimeoutException(Duration waited) {
+      super("Waited " + waited.toMillis() + "ms for a free slot to call Google. Too many calls are in flight.");
+    }
+  }
+
+  private enum Outcome { SUCCESS, DROP, IGNORE }
+
+  /**
+   * A slot for one call. It must be released once with the outcome of the call.
+   */
+  class Permit {
+    private final long startNanos = System.nanoTime();
+    private boolean released = false;
+
+    void onSuccess() {
+      release(this, System.nanoTime() - startNanos > config.latencyThreshold().toNanos() ? Outcome.DROP : Outcome.SUCCESS);
+    }
+
+    /**
+     * A 429, a 5xx or an I/O error.
+     */
+    void onThrottled() {
+      release(this, Outcome.DROP);
+    }
+
+    /**
+     * An outcome that says nothing about the load, e.g. a cancelled call.
+     */
+    void onIgnore() {
+      release(this, Outcome.IGNORE);
+    }
+  }
+
+  private record Waiter(CompletableFuture<Permit> future, long enqueuedNanos) {}
+
+  private final ConcurrencyLimitConfig config;
+  private final Metrics.Histogram queueWait;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Guarded by lock.
+  private double limit;
+  private int inFlight = 0;
+  private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+  private long lastDecreaseNanos;
+
+  ConcurrencyLimiter(ConcurrencyLimitConfig config, Metrics.Histogram queueWait) {
+    this.config = config;
+    this.queueWait = queueWait;
+    this.limit = config.initialLimit();
+    this.lastDecreaseNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns a permit right away when there is a free slot. Otherwise the future completes once a slot frees up, or
+   * fails with {@link QueueTimeoutException} after {@code maxWait}. Cancelling the future gives up the place in the
+   * queue.
+   */
+  CompletableFuture<Permit> acquire(Duration maxWait) {
+    Waiter waiter;
+    lock.lock();
+    try {
+      if (!config.enabled() || (waiters.isEmpty() && inFlight < (int) limit)) {
+        inFlight++;
+        queueWait.record(0);
+        return CompletableFuture.completedFuture(new Permit());
+      }
+      waiter = new Waiter(new CompletableFuture<>(), System.nanoTime());
+      waiters.add(waiter);
+    } finally {
+      lock.unlock();
+    }
+
+    CompletableFuture.delayedExecutor(Math.max(0, maxWait.toNanos()), TimeUnit.NANOSECONDS).execute(() -> {
+      lock.lock();
+      try {
+        // A waiter that has left the queue has been given a slot.
+        if (!waiters.remove(waiter)) {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (waiter.future.completeExceptionally(new QueueTimeoutException(maxWait))) {
+        queueWait.recordSince(waiter.enqueuedNanos);
+      }
+    });
+    return waiter.future;
+  }
+
+  private void release(Permit permit, Outcome outcome) {
+    var granted = new ArrayList<Waiter>();
+    lock.lock();
+    try {
+      if (permit.released) {
+        return;
+      }
+      permit.released = true;
+
+      if (!config.enabled()) {
+        // Only counts the calls in flight.
+      } else if (outcome == Outcome.DROP) {
+        // The calls already in flight when the limit was lowered don't lower it again, so a burst of 429s counts once.
+        if (permit.startNanos > lastDecreaseNanos) {
+          limit = Math.max(config.minLimit(), limit * config.backoffRatio());
+          lastDecreaseNanos = System.nanoTime();
+        }
+      } else if (outcome == Outcome.SUCCESS && inFlight * 2 >= limit) {
+        // Only when the limit is in use, so that it doesn't grow while idle.
+        limit = Math.min(config.maxLimit(), limit + 1 / limit);
+      }
+      inFlight--;
+
+      while (inFlight < (int) limit && !waiters.isEmpty()) {
+        var waiter = waiters.poll();
+        if (!waiter.future.isDone()) {
+          inFlight++;
+          granted.add(waiter);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    // Outside the lock, since completing runs the call.
+    for (var waiter : granted) {
+      var next = new Permit();
+      if (waiter.future.complete(next)) {
+        queueWait.recordSince(waiter.enqueuedNanos);
+      } else {
+        // Cancelled in the meantime.
+        next.onIgnore();
+      }
+    }
+  }
+
+  double limit() {
+    lock.lock();
+    try {
+      return limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int queued() {
+    lock.lock();
+    try {
+      return waiters.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the CORS headers.
+ *
+ * @param allowedOrigins the origins that may call Wait, e.g. `https://example.com`. `https://*.example.com` allows
+ *                       every subdomain of example.com. A signup from another origin gets a 403. A request without
+ *                       an `Origin`, e.g. from a server, is allowed. An empty list allows every origin.
+ * @param maxAge how long browsers may cache a preflight response. Chrome caps it at 2 hours.
+ */
+public record CorsConfig(
+  List<String> allowedOrigins,
+  Duration maxAge
+) {
+  public static final CorsConfig DEFAULT = new CorsConfig(
+    List.of(),
+    Duration.ofHours(2)
+  );
+}
@@ -0,0 +1,134 @@
+package tanin.wait;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which origins may call Wait and holds the prebuilt CORS headers for each of them.
+ */
+public class CorsPolicy {
+  // Bounds the headers cached for origins that match a wildcard or are refused.
+  static final int MAX_CACHED_ORIGINS = 10000;
+
+  /**
+   * The headers of a JSON response and of a preflight response for one origin.
+   */
+  record Headers(Map<String, String> json, Map<String, String> preflight) {}
+
+  private final boolean allowAny;
+  private final Set<String> exactOrigins = new HashSet<>();
+  // A wildcard like `https://*.example.com` is kept as `https://.example.com` and matched one domain label at a time.
+  private final Set<String> suffixes = new HashSet<>();
+  private final String maxAgeSeconds;
+  private final Headers anyOriginHeaders;
+  private final Headers refusedHeaders;
+  private final ConcurrentHashMap<String, Headers> byOrigin = new ConcurrentHashMap<>();
+
+  public CorsPolicy(CorsConfig config) {
+    allowAny = config.allowedOrigins().isEmpty();
+    maxAgeSeconds = "" + config.maxAge().toSeconds();
+
+    for (var origin : config.allowedOrigins()) {
+      var normalized = origin.trim().toLowerCase();
+      var wildcard = normalized.indexOf("://*.");
+      if (wildcard >= 0) {
+        suffixes.add(normalized.substring(0, wildcard + 3) + normalized.substring(wildcard + 4));
+      } else {
+        exactOrigins.add(normalized);
+      }
+    }
+
+    anyOriginHeaders = buildHeaders("*");
+    refusedHeaders = buildHeaders(null);
+    for (var origin : exactOrigins) {
+      byOrigin.put(origin, buildHeaders(origin));
+    }
+  }
+
+  private Headers buildHeaders(String allowedOrigin) {
+    var cors = new HashMap<String, String>();
+    if (allowedOrigin != null) {
+      cors.put("Access-Control-Allow-Origin", allowedOrigin);
+      cors.put("Access-Control-Allow-Methods", "POST");
+      cors.put("Access-Control-Allow-Headers", "*");
+    }
+    if (!allowAny) {
+      // The response depends on the origin, so caches must not share it across origins.
+      cors.put("Vary", "Origin");
+    }
+
+    var json = new HashMap<>(cors);
+    json.put("Content-Type", "application/json");
+
+    var preflight = new HashMap<>(cors);
+    if (allowedOrigin != null) {
+      preflight.put("Access-Control-Max-Age", maxAgeSeconds);
+    }
+
+    return new Headers(Map.copyOf(json), Map.copyOf(preflight));
+  }
+
+  /**
+   * The headers for the origin. A refused origin gets no `Access-Control-Allow-Origin`, so the browser blocks the
+   * response.
+   */
+  Headers headersFor(String origin) {
+    if (allowAny || origin == null) {
+      return allowAny ? anyOriginHeaders : refusedHeaders;
+    }
+
+    var headers = byOrigin.get(origin);
+    if (headers != null) {
+      return headers;
+    }
+
+    headers = isAllowed(origin.toLowerCase()) ? buildHeaders(origin) : refusedHeaders;
+    if (byOrigin.size() < MAX_CACHED_ORIGINS) {
+      byOrigin.putIfAbsent(origin, headers);
+    }
+    return headers;
+  }
+
+  /**
+   * Whether the request comes from a browser page whose origin isn't allowed. A request without an `Origin`, e.g. from
+   * a server or curl, isn't refused.
+   */
+  boolean refuses(String origin) {
+    return origin != null && headersFor(origin) == refusedHeaders;
+  }
+
+  boolean isAllowed(String origin) {
+    if (allowAny || exactOrigins.contains(origin)) {
+      return true;
+    }
+    if (suffixes.isEmpty()) {
+      return false;
+    }
+
+    var hostStart = origin.indexOf("://");
+    if (hostStart < 0) {
+      return false;
+    }
+    hostStart += 3;
+    var scheme = origin.substring(0, hostStart);
+
+    for (var dot = origin.indexOf('.', hostStart + 1); dot >= 0; dot = origin.indexOf('.', dot + 1)) {
+      if (suffixes.contains(scheme + origin.substring(dot))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the CORS headers for the origin to other headers, for the responses whose headers can't be prebuilt.
+   */
+  Map<String, String> addTo(Map<String, String> headers, String origin) {
+    var merged = new HashMap<>(headersFor(origin).json());
+    merged.putAll(headers);
+    return merged;
+  }
+}
@@ -0,0 +1,33 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the CSV export, which is on when {@code directory} is set.
+ *
+ * @param maxFileBytes the size at which `signups.csv` is renamed with a timestamp and a new one is started
+ * @param capacity the max number of signups waiting to be written. The copies of more signups are dropped.
+ */
+public record CsvExportConfig(
+  String directory,
+  long maxFileBytes,
+  int capacity,
+  int maxBatchSize,
+  Duration flushInterval
+) {
+  public static final CsvExportConfig DEFAULT = new CsvExportConfig(
+    "",
+    64 * 1024 * 1024,
+    10000,
+    1000,
+    Duration.ofSeconds(1)
+  );
+
+  boolean enabled() {
+    return !directory.isEmpty();
+  }
+
+  WriteBehindConfig queue() {
+    return new WriteBehindConfig(true, capacity, maxBatchSize, flushInterval, Duration.ZERO);
+  }
+}
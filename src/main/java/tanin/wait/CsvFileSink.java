@@ -0,0 +1,78 @@
+package tanin.wait;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Appends signups to `signups.csv` with the columns of the sheet, and rolls the file over once it reaches the max size.
+ */
+public class CsvFileSink implements SignupSink {
+  static final String FILE_NAME = "signups.csv";
+  static final String HEADER = "email,createdAt,group\n";
+  private static final DateTimeFormatter ROLLED_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+  private final Path directory;
+  private final Path file;
+  private final long maxFileBytes;
+
+  public CsvFileSink(Path directory, long maxFileBytes) throws IOException {
+    this.directory = directory;
+    this.file = directory.resolve(FILE_NAME);
+    this.maxFileBytes = maxFileBytes;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * Writes the whole batch to one file and flushes it once.
+   */
+  @Override
+  public synchronized void write(List<Signup> signups) throws IOException {
+    var rows = new StringBuilder();
+    for (var signup : signups) {
+      rows.append(escape(signup.email())).append(',')
+        .append(signup.createdAt()).append(',')
+        .append(escape(signup.group() == null ? "" : signup.group())).append('\n');
+    }
+    var bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+
+    // A batch larger than the max size still goes to one file.
+    if (Files.exists(file) && Files.size(file) > HEADER.length() && Files.size(file) + bytes.length > maxFileBytes) {
+      roll();
+    }
+
+    try (var out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      if (Files.size(file) == 0) {
+        out.write(HEADER.getBytes(StandardCharsets.UTF_8));
+      }
+      out.write(bytes);
+    }
+  }
+
+  private void roll() throws IOException {
+    var time = ROLLED_TIME.format(Instant.now());
+    var rolled = directory.resolve("signups-" + time + ".csv");
+    for (int i = 1; Files.exists(rolled); i++) {
+      rolled = directory.resolve("signups-" + time + "-" + i + ".csv");
+    }
+    Files.move(file, rolled, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static String escape(String value) {
+    // The characters that make a spreadsheet read the cell as a formula.
+    if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+      value = "'" + value;
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
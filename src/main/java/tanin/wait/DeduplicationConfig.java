@@ -0,0 +1,19 @@
+package tanin.wait;
+
+/**
+ * Settings of the duplicate-signup index, which also serves `GET /stats` and `GET /position`.
+ *
+ * @param warmFromSheet whether to load the existing rows of the sheet into the index at startup
+ * @param warmPageSize the number of rows per read while loading the sheet
+ */
+public record DeduplicationConfig(
+  boolean enabled,
+  boolean warmFromSheet,
+  int warmPageSize
+) {
+  public static final DeduplicationConfig DEFAULT = new DeduplicationConfig(
+    false,
+    true,
+    10000
+  );
+}
@@ -0,0 +1,135 @@
+package tanin.wait;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * A sink together with its own queue and flusher, so that a slow or throttled sheet only backs up its own queue.
+ */
+class Destination implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(Destination.class.getName());
+
+  final String name;
+  final SignupSink sink;
+  final WriteBehindQueue<Signup> writeBehindQueue;
+  final JournalReplayer journalReplayer;
+  final WriteBehindQueue<SignupJournal.Entry> journalQueue;
+  private final SignupJournal journal;
+  private final Metrics.Counter accepted;
+
+  Destination(String name, SignupSink sink, WaitConfig config, SignupJournal journal, Metrics metrics) {
+    this.name = name;
+    this.sink = sink;
+    this.journal = journal;
+
+    if (journal != null) {
+      journalReplayer = new JournalReplayer(journal, sink::write);
+      journalQueue = new WriteBehindQueue<>(config.writeBehind(), journalReplayer);
+      writeBehindQueue = null;
+      registerQueueMetrics(metrics, "journal", journalQueue);
+    } else if (config.writeBehind().enabled()) {
+      journalReplayer = null;
+      journalQueue = null;
+      writeBehindQueue = new WriteBehindQueue<>(config.writeBehind(), sink::write);
+      registerQueueMetrics(metrics, "write_behind", writeBehindQueue);
+    } else {
+      journalReplayer = null;
+      journalQueue = null;
+      writeBehindQueue = null;
+    }
+
+    accepted = metrics.counter("wait_signups_accepted_total", "The signups accepted for writing");
+  }
+
+  private static void registerQueueMetrics(Metrics metrics, String queue, WriteBehindQueue<?> writeBehindQueue) {
+    metrics.gauge("wait_queue_depth", "The number of signups waiting to be written", writeBehindQueue::size, "queue", queue);
+    metrics.counter("wait_queue_flushed_total", "The number of queued signups written", () -> writeBehindQueue.flushedCount.get(), "queue", queue);
+    metrics.counter("wait_queue_failed_total", "The number of queued signups whose write failed", () -> writeBehindQueue.failedCount.get(), "queue", queue);
+  }
+
+  // Without write-behind or the journal, signups are written by the request threads.
+  boolean isQueued() {
+    return writeBehindQueue != null || journalQueue != null;
+  }
+
+  /**
+   * Queues the signup, journaling it first in journal mode. Returns false when the queue is full. It waits at most the
+   * enqueue timeout.
+   */
+  boolean enqueue(Signup signup) throws IOException {
+    if (journalQueue != null) {
+      // Takes the slot before journaling, so that a journaled signup never waits for room.
+      if (!journalQueue.reserve()) {
+        return false;
+      }
+      SignupJournal.Entry entry;
+      try {
+        entry = journal.append(signup);
+      } catch (IOException | RuntimeException e) {
+        journalQueue.cancelReservation();
+        throw e;
+      }
+      if (!journalQueue.putReserved(entry)) {
+        logger.warning("The journal queue is closed. The journaled signup will be replayed on the next start.");
+      }
+    } else if (!writeBehindQueue.offer(signup)) {
+      return false;
+    }
+    accepted.increment();
+    return true;
+  }
+
+  /**
+   * Writes the signup through the non-blocking path of the sink. An interrupted thread cancels the write instead of
+   * leaving it in flight.
+   */
+  void write(Signup signup) throws Exception {
+    var future = sink.writeAsync(List.of(signup));
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+    accepted.increment();
+  }
+
+  /**
+   * Gives each queued batch one attempt. In journal mode, whatever fails stays in the journal for the next start.
+   */
+  @Override
+  public void close() {
+    close(ShutdownConfig.DEFAULT.flushTimeout());
+  }
+
+  /**
+   * Like {@link #close()} but waits at most {@code timeout} for the queued signups to be written.
+   */
+  ShutdownReport close(Duration timeout) {
+    var report = ShutdownReport.EMPTY;
+    if (journalReplayer != null) {
+      journalReplayer.stop();
+      report = closeQueue(journalQueue, timeout);
+    }
+    if (writeBehindQueue != null) {
+      report = closeQueue(writeBehindQueue, timeout);
+    }
+    sink.close();
+    return report;
+  }
+
+  private static ShutdownReport closeQueue(WriteBehindQueue<?> queue, Duration timeout) {
+    var flushedBefore = queue.flushedCount.get();
+    var failedBefore = queue.failedCount.get();
+    var left = queue.close(timeout);
+    return new ShutdownReport(0, 0, queue.flushedCount.get() - flushedBefore, queue.failedCount.get() - failedBefore, left);
+  }
+}
@@ -0,0 +1,47 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies accepted signups to a secondary sink, e.g. a CSV file or a webhook, through its own queue and flusher.
+ */
+class Exporter implements AutoCloseable {
+  final String name;
+  final SignupSink sink;
+  final WriteBehindQueue<Signup> queue;
+  final AtomicLong droppedCount = new AtomicLong();
+
+  Exporter(String name, SignupSink sink, WriteBehindConfig queueConfig, Metrics metrics) {
+    this.name = name;
+    this.sink = sink;
+    this.queue = new WriteBehindQueue<>(queueConfig, sink::write);
+
+    metrics.gauge("wait_export_queue_depth", "The number of signups waiting to be exported", queue::size, "sink", name);
+    metrics.counter("wait_export_written_total", "The signups exported", () -> queue.flushedCount.get(), "sink", name);
+    metrics.counter("wait_export_failed_total", "The signups whose export failed", () -> queue.failedCount.get(), "sink", name);
+    metrics.counter("wait_export_dropped_total", "The signups not exported because the export queue was full", () -> droppedCount.get(), "sink", name);
+  }
+
+  /**
+   * Queues a copy of the signup without waiting. The copy is dropped when the queue is full.
+   */
+  void offer(Signup signup) {
+    if (!queue.offer(signup)) {
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Waits up to {@code timeout} for the queued signups to be exported, then closes the sink.
+   */
+  void close(Duration timeout) {
+    queue.close(timeout);
+    sink.close();
+  }
+
+  @Override
+  public void close() {
+    close(ShutdownConfig.DEFAULT.flushTimeout());
+  }
+}
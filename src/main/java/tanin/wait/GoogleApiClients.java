@@ -0,0 +1,65 @@
+package tanin.wait;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The HttpClient and the access tokens shared by every sheet of a server. Each service account gets one token manager,
+ * however many sheets it writes to.
+ */
+public class GoogleApiClients implements AutoCloseable {
+  record Credential(String serviceAccountEmail, String serviceAccountPrivateKey) {}
+
+  private final WaitConfig config;
+  private final Metrics metrics;
+  private final ConcurrentHashMap<Credential, AccessTokenManager> tokenManagers = new ConcurrentHashMap<>();
+  private HttpClient client;
+  private boolean closed = false;
+
+  public GoogleApiClients(WaitConfig config, Metrics metrics) {
+    this.config = config;
+    this.metrics = metrics;
+  }
+
+  /**
+   * The client, which is built on first use so that a server without a sheet doesn't start one.
+   */
+  synchronized HttpClient client() {
+    if (closed) {
+      throw new IllegalStateException("The Google API clients are closed");
+    }
+    if (client == null) {
+      client = config.httpClient().build();
+    }
+    return client;
+  }
+
+  AccessTokenManager tokenManager(String serviceAccountEmail, String serviceAccountPrivateKey) {
+    return tokenManagers.computeIfAbsent(
+      new Credential(serviceAccountEmail, serviceAccountPrivateKey),
+      credential -> new AccessTokenManager(
+        credential.serviceAccountEmail(),
+        credential.serviceAccountPrivateKey(),
+        client(),
+        config.httpClient().requestTimeout(),
+        config.googleEndpoints().tokenUrl(),
+        AccessTokenManager.DEFAULT_REFRESH_MARGIN,
+        metrics.withLabels("service_account", credential.serviceAccountEmail())
+      )
+    );
+  }
+
+  GoogleSheetService service(String serviceAccountEmail, String serviceAccountPrivateKey, Metrics metrics) {
+    return new GoogleSheetService(client(), tokenManager(serviceAccountEmail, serviceAccountPrivateKey), config, metrics);
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    tokenManagers.values().forEach(AccessTokenManager::close);
+    tokenManagers.clear();
+    if (client != null) {
+      client.close();
+    }
+  }
+}
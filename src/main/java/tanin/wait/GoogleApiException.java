@@ -0,0 +1,25 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * A non-200 response from a Google API.
+ */
+public class GoogleApiException extends RuntimeException {
+  public final int statusCode;
+  /** The server's Retry-After hint, or null when there is none. */
+  public final Duration retryAfter;
+
+  public GoogleApiException(int statusCode, String body, Duration retryAfter) {
+    super("Google API returned " + statusCode + ": " + body);
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * 429 (e.g. RESOURCE_EXHAUSTED) and 5xx are worth retrying. Other statuses won't change on a retry.
+   */
+  public boolean isRetryable() {
+    return statusCode == 429 || statusCode >= 500;
+  }
+}
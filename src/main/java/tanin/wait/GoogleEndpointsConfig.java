@@ -0,0 +1,17 @@
+package tanin.wait;
+
+/**
+ * Where the Google APIs are. Pointing them at a local server lets tests and load tests run without network.
+ *
+ * @param tokenUrl the OAuth token endpoint of the service account
+ * @param sheetsBaseUrl the base URL of the Sheets API, without the `/v4/...` path
+ */
+public record GoogleEndpointsConfig(
+  String tokenUrl,
+  String sheetsBaseUrl
+) {
+  public static final GoogleEndpointsConfig DEFAULT = new GoogleEndpointsConfig(
+    "https://oauth2.googleapis.com/token",
+    "https://sheets.googleapis.com"
+  );
+}
@@ -0,0 +1,77 @@
+package tanin.wait;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Appends signups as rows of a Google Sheet: the email, the creation time and the group.
+ */
+public class GoogleSheetSink implements SignupSink {
+  final GoogleSheetService service;
+  private final String sheetId;
+  private final String sheetName;
+  private final int readPageSize;
+
+  public GoogleSheetSink(GoogleSheetService service, String sheetId, String sheetName, int readPageSize) {
+    this.service = service;
+    this.sheetId = sheetId;
+    this.sheetName = sheetName;
+    this.readPageSize = readPageSize;
+  }
+
+  @Override
+  public void write(List<Signup> signups) {
+    service.append(sheetId, sheetName, signups);
+  }
+
+  @Override
+  public CompletableFuture<Void> writeAsync(List<Signup> signups) {
+    return service.appendAsync(sheetId, sheetName, signups);
+  }
+
+  /**
+   * Reads the sheet page by page. Rows without an email are skipped, and a row whose time can't be parsed gets the
+   * epoch.
+   */
+  @Override
+  public void readAll(Consumer<Signup> consumer) {
+    var startRow = 1;
+    while (true) {
+      var rows = service.readRows(sheetId, sheetName, startRow, readPageSize);
+      for (var row : rows) {
+        if (row.isEmpty() || row.getFirst().isBlank()) {
+          continue;
+        }
+        var createdAt = row.size() > 1 ? parseInstant(row.get(1)) : Instant.EPOCH;
+        var group = row.size() > 2 && !row.get(2).isBlank() ? row.get(2) : null;
+        consumer.accept(new Signup(row.getFirst(), group, createdAt));
+      }
+
+      if (rows.size() < readPageSize) {
+        break;
+      }
+      startRow += readPageSize;
+    }
+  }
+
+  @Override
+  public void warmUp() {
+    service.warmUp();
+  }
+
+  private static Instant parseInstant(String value) {
+    try {
+      return Instant.parse(value);
+    } catch (DateTimeParseException e) {
+      return Instant.EPOCH;
+    }
+  }
+
+  @Override
+  public void close() {
+    service.close();
+  }
+}
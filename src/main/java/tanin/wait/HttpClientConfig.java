@@ -0,0 +1,28 @@
+package tanin.wait;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Settings of the long-lived {@link HttpClient} that carries all Google API traffic. The size of the connection pool
+ * is a JVM-wide property that {@link Main} sets at startup.
+ */
+public record HttpClientConfig(
+  HttpClient.Version version,
+  Duration connectTimeout,
+  Duration requestTimeout
+) {
+  public static final HttpClientConfig DEFAULT = new HttpClientConfig(
+    HttpClient.Version.HTTP_2,
+    Duration.ofSeconds(5),
+    Duration.ofSeconds(15)
+  );
+
+  HttpClient build() {
+    return HttpClient.newBuilder()
+      .version(version)
+      .connectTimeout(connectTimeout)
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .build();
+  }
+}
@@ -0,0 +1,17 @@
+package tanin.wait;
+
+/**
+ * Settings of the local journal. When it is enabled, `POST /write` returns 202 once the signup is durable on disk, and
+ * the journal is shipped to the sheet in batches according to {@link WriteBehindConfig}.
+ */
+public record JournalConfig(
+  boolean enabled,
+  String directory,
+  long maxSegmentBytes
+) {
+  public static final JournalConfig DEFAULT = new JournalConfig(
+    false,
+    "./journal",
+    16 * 1024 * 1024
+  );
+}
@@ -0,0 +1,82 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Ships journal entries to the sheet and advances the journal's checkpoint, retrying a failed batch with backoff.
+ */
+public class JournalReplayer implements WriteBehindQueue.Flusher<SignupJournal.Entry> {
+  private static final Logger logger = Logger.getLogger(JournalReplayer.class.getName());
+
+  static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+  static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+  private final SignupJournal journal;
+  private final WriteBehindQueue.Flusher<Signup> sink;
+  private volatile boolean stopped = false;
+
+  public JournalReplayer(SignupJournal journal, WriteBehindQueue.Flusher<Signup> sink) {
+    this.journal = journal;
+    this.sink = sink;
+  }
+
+  @Override
+  public void flush(List<SignupJournal.Entry> batch) throws Exception {
+    var signups = batch.stream().map(SignupJournal.Entry::signup).toList();
+    var backoff = INITIAL_BACKOFF;
+
+    while (true) {
+      try {
+        sink.flush(signups);
+        break;
+      } catch (Exception e) {
+        if (stopped) {
+          throw e;
+        }
+        logger.warning("Unable to ship " + batch.size() + " journal entries. Retrying in " + backoff + ": " + e.getMessage());
+        sleepUnlessStopped(backoff);
+        backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
+      }
+    }
+
+    journal.acknowledge(batch);
+  }
+
+  private void sleepUnlessStopped(Duration duration) throws InterruptedException {
+    var deadline = System.nanoTime() + duration.toNanos();
+    while (!stopped && System.nanoTime() < deadline) {
+      Thread.sleep(Math.min(100, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+    }
+  }
+
+  /**
+   * Enqueues the entries that were not acknowledged before the last shutdown into the queue of their destination. It
+   * runs in the background because the backlog may be larger than the queues.
+   */
+  public static Thread replay(SignupJournal journal, Function<SignupJournal.Entry, WriteBehindQueue<SignupJournal.Entry>> queueFor) {
+    var entries = journal.unacknowledgedAtOpen();
+    if (!entries.isEmpty()) {
+      logger.info("Replaying " + entries.size() + " unacknowledged journal entries");
+    }
+
+    return Thread.ofVirtual().name("journal-replay").start(() -> {
+      try {
+        for (var entry : entries) {
+          queueFor.apply(entry).put(entry);
+        }
+      } catch (InterruptedException | IllegalStateException e) {
+        logger.warning("Stopped replaying the journal. The rest will be replayed on the next start.");
+      }
+    });
+  }
+
+  /**
+   * Stops retrying. Batches that fail from now on stay in the journal.
+   */
+  public void stop() {
+    stopped = true;
+  }
+}
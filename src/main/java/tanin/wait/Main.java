@@ -1,8 +1,12 @@
 package tanin.wait;
 
 import java.io.IOException;
+import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -40,6 +44,22 @@ public class Main {
     return value.trim();
   }
 
+  /**
+   * Like {@link #readFromEnvOrFile(String, String)}, but an unset setting is empty instead of an error.
+   */
+  static String readOptionalFromEnvOrFile(String envName, String filePath) {
+    var value = System.getenv(envName);
+    if (value == null || value.isEmpty()) {
+      try {
+        value = new String(Files.readAllBytes(Path.of(filePath)));
+      } catch (IOException e) {
+        value = "";
+      }
+    }
+
+    return value.trim();
+  }
+
   static String getServiceAccountKeyJson() {
     return Main.readFromEnvOrFile("GOOGLE_SHEET_SERVICE_ACCOUNT_KEY_JSON", "./secrets/GOOGLE_SHEET_SERVICE_ACCOUNT_KEY_JSON");
   }
@@ -49,15 +69,239 @@ public class Main {
   static String getSheetName() {
     return Main.readFromEnvOrFile("GOOGLE_SHEET_NAME", "./secrets/GOOGLE_SHEET_NAME");
   }
+  /**
+   * Sets the max number of idle keep-alive connections per host of every HttpClient in the process. The JDK reads it
+   * once, when the first client is created, so this runs before anything else. An explicit -D flag still wins.
+   */
+  static void setConnectionPoolSize() {
+    if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+      System.setProperty("jdk.httpclient.connectionPoolSize", readFromEnvOrFile("HTTP_MAX_IDLE_CONNECTIONS", "./secrets/HTTP_MAX_IDLE_CONNECTIONS", "20"));
+    }
+  }
+
+  static HttpClientConfig getHttpClientConfig() {
+    var defaults = HttpClientConfig.DEFAULT;
+    return new HttpClientConfig(
+      HttpClient.Version.valueOf(readFromEnvOrFile("GOOGLE_API_HTTP_VERSION", "./secrets/GOOGLE_API_HTTP_VERSION", defaults.version().name())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_CONNECT_TIMEOUT_MILLIS", "./secrets/GOOGLE_API_CONNECT_TIMEOUT_MILLIS", "" + defaults.connectTimeout().toMillis()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_REQUEST_TIMEOUT_MILLIS", "./secrets/GOOGLE_API_REQUEST_TIMEOUT_MILLIS", "" + defaults.requestTimeout().toMillis())))
+    );
+  }
+
+  static WriteBehindConfig getWriteBehindConfig() {
+    var defaults = WriteBehindConfig.DEFAULT;
+    return new WriteBehindConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("WRITE_BEHIND_ENABLED", "./secrets/WRITE_BEHIND_ENABLED", "" + defaults.enabled())),
+      Integer.parseInt(readFromEnvOrFile("WRITE_BEHIND_QUEUE_CAPACITY", "./secrets/WRITE_BEHIND_QUEUE_CAPACITY", "" + defaults.capacity())),
+      Integer.parseInt(readFromEnvOrFile("WRITE_BEHIND_MAX_BATCH_SIZE", "./secrets/WRITE_BEHIND_MAX_BATCH_SIZE", "" + defaults.maxBatchSize())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("WRITE_BEHIND_FLUSH_INTERVAL_MILLIS", "./secrets/WRITE_BEHIND_FLUSH_INTERVAL_MILLIS", "" + defaults.flushInterval().toMillis()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("WRITE_BEHIND_ENQUEUE_TIMEOUT_MILLIS", "./secrets/WRITE_BEHIND_ENQUEUE_TIMEOUT_MILLIS", "" + defaults.enqueueTimeout().toMillis())))
+    );
+  }
+
+  static JournalConfig getJournalConfig() {
+    var defaults = JournalConfig.DEFAULT;
+    return new JournalConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("JOURNAL_ENABLED", "./secrets/JOURNAL_ENABLED", "" + defaults.enabled())),
+      readFromEnvOrFile("JOURNAL_DIRECTORY", "./secrets/JOURNAL_DIRECTORY", defaults.directory()),
+      Long.parseLong(readFromEnvOrFile("JOURNAL_MAX_SEGMENT_BYTES", "./secrets/JOURNAL_MAX_SEGMENT_BYTES", "" + defaults.maxSegmentBytes()))
+    );
+  }
+
+  static StoreConfig getStoreConfig() {
+    var defaults = StoreConfig.DEFAULT;
+    return new StoreConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("STORE_ENABLED", "./secrets/STORE_ENABLED", "" + defaults.enabled())),
+      readFromEnvOrFile("STORE_DIRECTORY", "./secrets/STORE_DIRECTORY", defaults.directory()),
+      Long.parseLong(readFromEnvOrFile("STORE_MAX_SEGMENT_BYTES", "./secrets/STORE_MAX_SEGMENT_BYTES", "" + defaults.maxSegmentBytes())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("STORE_EXPORT_INTERVAL_MILLIS", "./secrets/STORE_EXPORT_INTERVAL_MILLIS", "" + defaults.exportInterval().toMillis()))),
+      Integer.parseInt(readFromEnvOrFile("STORE_EXPORT_BATCH_SIZE", "./secrets/STORE_EXPORT_BATCH_SIZE", "" + defaults.exportBatchSize()))
+    );
+  }
+
+  static CsvExportConfig getCsvExportConfig() {
+    var defaults = CsvExportConfig.DEFAULT;
+    return new CsvExportConfig(
+      readOptionalFromEnvOrFile("CSV_EXPORT_DIRECTORY", "./secrets/CSV_EXPORT_DIRECTORY"),
+      Long.parseLong(readFromEnvOrFile("CSV_EXPORT_MAX_FILE_BYTES", "./secrets/CSV_EXPORT_MAX_FILE_BYTES", "" + defaults.maxFileBytes())),
+      Integer.parseInt(readFromEnvOrFile("CSV_EXPORT_QUEUE_CAPACITY", "./secrets/CSV_EXPORT_QUEUE_CAPACITY", "" + defaults.capacity())),
+      Integer.parseInt(readFromEnvOrFile("CSV_EXPORT_MAX_BATCH_SIZE", "./secrets/CSV_EXPORT_MAX_BATCH_SIZE", "" + defaults.maxBatchSize())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("CSV_EXPORT_FLUSH_INTERVAL_MILLIS", "./secrets/CSV_EXPORT_FLUSH_INTERVAL_MILLIS", "" + defaults.flushInterval().toMillis())))
+    );
+  }
+
+  static WebhookConfig getWebhookConfig() {
+    var defaults = WebhookConfig.DEFAULT;
+    return new WebhookConfig(
+      readOptionalFromEnvOrFile("WEBHOOK_URL", "./secrets/WEBHOOK_URL"),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("WEBHOOK_TIMEOUT_MILLIS", "./secrets/WEBHOOK_TIMEOUT_MILLIS", "" + defaults.timeout().toMillis()))),
+      Integer.parseInt(readFromEnvOrFile("WEBHOOK_QUEUE_CAPACITY", "./secrets/WEBHOOK_QUEUE_CAPACITY", "" + defaults.capacity())),
+      Integer.parseInt(readFromEnvOrFile("WEBHOOK_MAX_BATCH_SIZE", "./secrets/WEBHOOK_MAX_BATCH_SIZE", "" + defaults.maxBatchSize())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("WEBHOOK_FLUSH_INTERVAL_MILLIS", "./secrets/WEBHOOK_FLUSH_INTERVAL_MILLIS", "" + defaults.flushInterval().toMillis())))
+    );
+  }
+
+  static RetryConfig getRetryConfig() {
+    var defaults = RetryConfig.DEFAULT;
+    return new RetryConfig(
+      Integer.parseInt(readFromEnvOrFile("GOOGLE_API_MAX_ATTEMPTS", "./secrets/GOOGLE_API_MAX_ATTEMPTS", "" + defaults.maxAttempts())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_INITIAL_BACKOFF_MILLIS", "./secrets/GOOGLE_API_INITIAL_BACKOFF_MILLIS", "" + defaults.initialBackoff().toMillis()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_MAX_BACKOFF_MILLIS", "./secrets/GOOGLE_API_MAX_BACKOFF_MILLIS", "" + defaults.maxBackoff().toMillis()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_CALL_TIMEOUT_MILLIS", "./secrets/GOOGLE_API_CALL_TIMEOUT_MILLIS", "" + defaults.callTimeout().toMillis())))
+    );
+  }
+
+  static ConcurrencyLimitConfig getConcurrencyLimitConfig() {
+    var defaults = ConcurrencyLimitConfig.DEFAULT;
+    return new ConcurrencyLimitConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_LIMIT_ENABLED", "./secrets/GOOGLE_API_CONCURRENCY_LIMIT_ENABLED", "" + defaults.enabled())),
+      Integer.parseInt(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_INITIAL_LIMIT", "./secrets/GOOGLE_API_CONCURRENCY_INITIAL_LIMIT", "" + defaults.initialLimit())),
+      Integer.parseInt(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_MIN_LIMIT", "./secrets/GOOGLE_API_CONCURRENCY_MIN_LIMIT", "" + defaults.minLimit())),
+      Integer.parseInt(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_MAX_LIMIT", "./secrets/GOOGLE_API_CONCURRENCY_MAX_LIMIT", "" + defaults.maxLimit())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_LATENCY_THRESHOLD_MILLIS", "./secrets/GOOGLE_API_CONCURRENCY_LATENCY_THRESHOLD_MILLIS", "" + defaults.latencyThreshold().toMillis()))),
+      Double.parseDouble(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_BACKOFF_RATIO", "./secrets/GOOGLE_API_CONCURRENCY_BACKOFF_RATIO", "" + defaults.backoffRatio())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("GOOGLE_API_CONCURRENCY_MAX_QUEUE_WAIT_MILLIS", "./secrets/GOOGLE_API_CONCURRENCY_MAX_QUEUE_WAIT_MILLIS", "" + defaults.maxQueueWait().toMillis())))
+    );
+  }
 
-  public static void main(String[] args) {
+  static CircuitBreakerConfig getCircuitBreakerConfig() {
+    var defaults = CircuitBreakerConfig.DEFAULT;
+    return new CircuitBreakerConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("CIRCUIT_BREAKER_ENABLED", "./secrets/CIRCUIT_BREAKER_ENABLED", "" + defaults.enabled())),
+      Double.parseDouble(readFromEnvOrFile("CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD", "./secrets/CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD", "" + defaults.failureRateThreshold())),
+      Integer.parseInt(readFromEnvOrFile("CIRCUIT_BREAKER_WINDOW_SIZE", "./secrets/CIRCUIT_BREAKER_WINDOW_SIZE", "" + defaults.windowSize())),
+      Integer.parseInt(readFromEnvOrFile("CIRCUIT_BREAKER_MINIMUM_CALLS", "./secrets/CIRCUIT_BREAKER_MINIMUM_CALLS", "" + defaults.minimumCalls())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("CIRCUIT_BREAKER_OPEN_MILLIS", "./secrets/CIRCUIT_BREAKER_OPEN_MILLIS", "" + defaults.openDuration().toMillis())))
+    );
+  }
+
+  static DeduplicationConfig getDeduplicationConfig() {
+    var defaults = DeduplicationConfig.DEFAULT;
+    return new DeduplicationConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("DEDUPLICATION_ENABLED", "./secrets/DEDUPLICATION_ENABLED", "" + defaults.enabled())),
+      Boolean.parseBoolean(readFromEnvOrFile("DEDUPLICATION_WARM_FROM_SHEET", "./secrets/DEDUPLICATION_WARM_FROM_SHEET", "" + defaults.warmFromSheet())),
+      Integer.parseInt(readFromEnvOrFile("DEDUPLICATION_WARM_PAGE_SIZE", "./secrets/DEDUPLICATION_WARM_PAGE_SIZE", "" + defaults.warmPageSize()))
+    );
+  }
+
+  static RateLimitConfig getRateLimitConfig() {
+    var defaults = RateLimitConfig.DEFAULT;
+    return new RateLimitConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("RATE_LIMIT_ENABLED", "./secrets/RATE_LIMIT_ENABLED", "" + defaults.enabled())),
+      Double.parseDouble(readFromEnvOrFile("RATE_LIMIT_PER_IP_PER_SECOND", "./secrets/RATE_LIMIT_PER_IP_PER_SECOND", "" + defaults.perIpRatePerSecond())),
+      Integer.parseInt(readFromEnvOrFile("RATE_LIMIT_PER_IP_BURST", "./secrets/RATE_LIMIT_PER_IP_BURST", "" + defaults.perIpBurst())),
+      Double.parseDouble(readFromEnvOrFile("RATE_LIMIT_PER_GROUP_PER_SECOND", "./secrets/RATE_LIMIT_PER_GROUP_PER_SECOND", "" + defaults.perGroupRatePerSecond())),
+      Integer.parseInt(readFromEnvOrFile("RATE_LIMIT_PER_GROUP_BURST", "./secrets/RATE_LIMIT_PER_GROUP_BURST", "" + defaults.perGroupBurst())),
+      Boolean.parseBoolean(readFromEnvOrFile("RATE_LIMIT_TRUST_FORWARDED_FOR", "./secrets/RATE_LIMIT_TRUST_FORWARDED_FOR", "" + defaults.trustForwardedFor())),
+      Integer.parseInt(readFromEnvOrFile("RATE_LIMIT_MAX_BUCKETS", "./secrets/RATE_LIMIT_MAX_BUCKETS", "" + defaults.maxBuckets())),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("RATE_LIMIT_IDLE_SWEEP_INTERVAL_MILLIS", "./secrets/RATE_LIMIT_IDLE_SWEEP_INTERVAL_MILLIS", "" + defaults.idleSweepInterval().toMillis())))
+    );
+  }
+
+  static CorsConfig getCorsConfig() {
+    var defaults = CorsConfig.DEFAULT;
+    return new CorsConfig(
+      Arrays.stream(readOptionalFromEnvOrFile("CORS_ALLOWED_ORIGINS", "./secrets/CORS_ALLOWED_ORIGINS").split(","))
+        .map(String::trim)
+        .filter(origin -> !origin.isEmpty())
+        .toList(),
+      Duration.ofSeconds(Long.parseLong(readFromEnvOrFile("CORS_MAX_AGE_SECONDS", "./secrets/CORS_MAX_AGE_SECONDS", "" + defaults.maxAge().toSeconds())))
+    );
+  }
+
+  static RoutingConfig getRoutingConfig() {
+    var defaults = RoutingConfig.DEFAULT;
+    return new RoutingConfig(
+      readOptionalFromEnvOrFile("ROUTING_FILE", "./secrets/ROUTING_FILE"),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("ROUTING_RELOAD_INTERVAL_MILLIS", "./secrets/ROUTING_RELOAD_INTERVAL_MILLIS", "" + defaults.reloadInterval().toMillis())))
+    );
+  }
+
+  static WriteRequestConfig getWriteRequestConfig() {
+    var defaults = WriteRequestConfig.DEFAULT;
+    return new WriteRequestConfig(
+      Integer.parseInt(readFromEnvOrFile("WRITE_MAX_BODY_BYTES", "./secrets/WRITE_MAX_BODY_BYTES", "" + defaults.maxBodyBytes())),
+      Integer.parseInt(readFromEnvOrFile("WRITE_MAX_FIELD_LENGTH", "./secrets/WRITE_MAX_FIELD_LENGTH", "" + defaults.maxFieldLength()))
+    );
+  }
+
+  static ServerConfig getServerConfig() {
+    var defaults = ServerConfig.DEFAULT;
+    return new ServerConfig(
+      Duration.ofSeconds(Long.parseLong(readFromEnvOrFile("SERVER_KEEP_ALIVE_TIMEOUT_SECONDS", "./secrets/SERVER_KEEP_ALIVE_TIMEOUT_SECONDS", "" + defaults.keepAliveTimeout().toSeconds()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("SERVER_SOCKET_TIMEOUT_MILLIS", "./secrets/SERVER_SOCKET_TIMEOUT_MILLIS", "" + defaults.socketTimeout().toMillis()))),
+      Integer.parseInt(readFromEnvOrFile("SERVER_MAX_READ_BYTES", "./secrets/SERVER_MAX_READ_BYTES", "" + defaults.maxReadBytes())),
+      Integer.parseInt(readFromEnvOrFile("SERVER_MAX_CONCURRENT_REQUESTS", "./secrets/SERVER_MAX_CONCURRENT_REQUESTS", "" + defaults.maxConcurrentRequests()))
+    );
+  }
+
+  static ShutdownConfig getShutdownConfig() {
+    var defaults = ShutdownConfig.DEFAULT;
+    return new ShutdownConfig(
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("SHUTDOWN_DRAIN_TIMEOUT_MILLIS", "./secrets/SHUTDOWN_DRAIN_TIMEOUT_MILLIS", "" + defaults.drainTimeout().toMillis()))),
+      Duration.ofMillis(Long.parseLong(readFromEnvOrFile("SHUTDOWN_FLUSH_TIMEOUT_MILLIS", "./secrets/SHUTDOWN_FLUSH_TIMEOUT_MILLIS", "" + defaults.flushTimeout().toMillis())))
+    );
+  }
+
+  static ReadApiConfig getReadApiConfig() {
+    return new ReadApiConfig(
+      readOptionalFromEnvOrFile("READ_API_TOKEN", "./secrets/READ_API_TOKEN")
+    );
+  }
+
+  static StartupConfig getStartupConfig() {
+    var defaults = StartupConfig.DEFAULT;
+    return new StartupConfig(
+      Boolean.parseBoolean(readFromEnvOrFile("STARTUP_WARM_UP", "./secrets/STARTUP_WARM_UP", "" + defaults.warmUp()))
+    );
+  }
+
+  static GoogleEndpointsConfig getGoogleEndpointsConfig() {
+    var defaults = GoogleEndpointsConfig.DEFAULT;
+    return new GoogleEndpointsConfig(
+      readFromEnvOrFile("GOOGLE_OAUTH_TOKEN_URL", "./secrets/GOOGLE_OAUTH_TOKEN_URL", defaults.tokenUrl()),
+      readFromEnvOrFile("GOOGLE_SHEETS_BASE_URL", "./secrets/GOOGLE_SHEETS_BASE_URL", defaults.sheetsBaseUrl())
+    );
+  }
+
+  static WaitConfig getConfig() {
+    return WaitConfig.builder()
+      .httpClient(getHttpClientConfig())
+      .writeBehind(getWriteBehindConfig())
+      .journal(getJournalConfig())
+      .retry(getRetryConfig())
+      .circuitBreaker(getCircuitBreakerConfig())
+      .concurrencyLimit(getConcurrencyLimitConfig())
+      .deduplication(getDeduplicationConfig())
+      .rateLimit(getRateLimitConfig())
+      .googleEndpoints(getGoogleEndpointsConfig())
+      .cors(getCorsConfig())
+      .routing(getRoutingConfig())
+      .writeRequest(getWriteRequestConfig())
+      .server(getServerConfig())
+      .shutdown(getShutdownConfig())
+      .startup(getStartupConfig())
+      .store(getStoreConfig())
+      .readApi(getReadApiConfig())
+      .csvExport(getCsvExportConfig())
+      .webhook(getWebhookConfig())
+      .build();
+  }
+
+  public static void main(String[] args) throws Exception {
+    setConnectionPoolSize();
+    var port = Integer.parseInt(readFromEnvOrFile("PORT", "./secrets/PORT", "9090"));
     var main = new WaitServer(
-      Integer.parseInt(readFromEnvOrFile("PORT", "./secrets/PORT", "9090")),
+      port,
       getServiceAccountKeyJson(),
       getSheetId(),
-      getSheetName()
+      getSheetName(),
+      getConfig()
     );
     main.start();
+    ProcessHandle.current().info().startInstant().ifPresent(startedAt ->
+      logger.info("Listening on port " + port + ", " + Duration.between(startedAt, Instant.now()).toMillis() + "ms after the JVM started")
+    );
     main.minum.block();
   }
 }
@@ -0,0 +1,224 @@
+package tanin.wait;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A small registry of counters, gauges and latency histograms that renders the Prometheus text format.
+ */
+public class Metrics {
+  // In seconds, from 500us to 10s.
+  static final double[] LATENCY_BUCKETS = {
+    0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  public static class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+      value.increment();
+    }
+
+    public long get() {
+      return value.sum();
+    }
+  }
+
+  public static class Histogram {
+    private final long[] upperBoundsNanos;
+    // The last slot counts the values above every bound.
+    private final LongAdder[] counts;
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(double[] upperBoundsSeconds) {
+      upperBoundsNanos = new long[upperBoundsSeconds.length];
+      for (int i = 0; i < upperBoundsSeconds.length; i++) {
+        upperBoundsNanos[i] = (long) (upperBoundsSeconds[i] * 1_000_000_000L);
+      }
+      counts = new LongAdder[upperBoundsSeconds.length + 1];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    public void record(long nanos) {
+      var i = 0;
+      while (i < upperBoundsNanos.length && nanos > upperBoundsNanos[i]) {
+        i++;
+      }
+      counts[i].increment();
+      sumNanos.add(nanos);
+    }
+
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+      var total = 0L;
+      for (var count : counts) {
+        total += count.sum();
+      }
+      return total;
+    }
+
+    /**
+     * The upper bound of the bucket that contains the quantile, in seconds. Infinity when it is above every bucket.
+     */
+    public double quantile(double q) {
+      var total = count();
+      if (total == 0) {
+        return 0;
+      }
+      var rank = Math.ceil(q * total);
+      var seen = 0L;
+      for (int i = 0; i < upperBoundsNanos.length; i++) {
+        seen += counts[i].sum();
+        if (seen >= rank) {
+          return upperBoundsNanos[i] / 1e9;
+        }
+      }
+      return Double.POSITIVE_INFINITY;
+    }
+  }
+
+  private record Family(String name, String help, String type, Map<String, Object> children) {}
+
+  private final Map<String, Family> families;
+  // Prepended to the labels of every metric registered through this instance.
+  private final String[] constantLabels;
+
+  public Metrics() {
+    this(new ConcurrentSkipListMap<>(), new String[0]);
+  }
+
+  private Metrics(Map<String, Family> families, String[] constantLabels) {
+    this.families = families;
+    this.constantLabels = constantLabels;
+  }
+
+  /**
+   * A view of the same registry that adds the labels to every metric registered through it, e.g. the destination of a
+   * sink.
+   */
+  public Metrics withLabels(String... labels) {
+    var combined = Arrays.copyOf(constantLabels, constantLabels.length + labels.length);
+    System.arraycopy(labels, 0, combined, constantLabels.length, labels.length);
+    return new Metrics(families, combined);
+  }
+
+  /**
+   * Returns the counter with the name and labels, creating it on first use. Labels are given as name-value pairs.
+   */
+  public Counter counter(String name, String help, String... labels) {
+    return (Counter) family(name, help, "counter").children().computeIfAbsent(formatLabels(labels), k -> new Counter());
+  }
+
+  /**
+   * Registers a counter that is kept elsewhere and read when the metrics are rendered.
+   */
+  public void counter(String name, String help, DoubleSupplier value, String... labels) {
+    family(name, help, "counter").children().put(formatLabels(labels), value);
+  }
+
+  public Histogram histogram(String name, String help, String... labels) {
+    return (Histogram) family(name, help, "histogram").children().computeIfAbsent(formatLabels(labels), k -> new Histogram(LATENCY_BUCKETS));
+  }
+
+  /**
+   * Registers a value that is read when the metrics are rendered, e.g. the depth of a queue.
+   */
+  public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+    family(name, help, "gauge").children().put(formatLabels(labels), value);
+  }
+
+  private Family family(String name, String help, String type) {
+    var family = families.computeIfAbsent(name, k -> new Family(name, help, type, new ConcurrentSkipListMap<>()));
+    if (!family.type().equals(type)) {
+      throw new IllegalArgumentException(name + " is already registered as a " + family.type());
+    }
+    return family;
+  }
+
+  private String formatLabels(String... labels) {
+    if (constantLabels.length == 0) {
+      return formatLabelPairs(labels);
+    }
+    var combined = Arrays.copyOf(constantLabels, constantLabels.length + labels.length);
+    System.arraycopy(labels, 0, combined, constantLabels.length, labels.length);
+    return formatLabelPairs(combined);
+  }
+
+  static String formatLabelPairs(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be name-value pairs");
+    }
+    var builder = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(labels[i]).append("=\"")
+        .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+        .append('"');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Renders every metric in the Prometheus text exposition format (version 0.0.4).
+   */
+  public String render() {
+    var out = new StringBuilder(4096);
+    for (var family : families.values()) {
+      out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+      out.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+
+      for (var child : family.children().entrySet()) {
+        var labels = child.getKey();
+        switch (child.getValue()) {
+          case Counter counter -> appendSample(out, family.name(), labels, null, counter.get());
+          case DoubleSupplier gauge -> appendSample(out, family.name(), labels, null, gauge.getAsDouble());
+          case Histogram histogram -> {
+            var cumulative = 0L;
+            for (int i = 0; i < histogram.counts.length; i++) {
+              cumulative += histogram.counts[i].sum();
+              var le = i < histogram.upperBoundsNanos.length ? formatNumber(histogram.upperBoundsNanos[i] / 1e9) : "+Inf";
+              appendSample(out, family.name() + "_bucket", labels, "le=\"" + le + "\"", cumulative);
+            }
+            appendSample(out, family.name() + "_sum", labels, null, histogram.sumNanos.sum() / 1e9);
+            appendSample(out, family.name() + "_count", labels, null, cumulative);
+          }
+          default -> throw new IllegalStateException("Unknown metric: " + child.getValue());
+        }
+      }
+    }
+    return out.toString();
+  }
+
+  private static void appendSample(StringBuilder out, String name, String labels, String extraLabel, double value) {
+    out.append(name);
+    if (!labels.isEmpty() || extraLabel != null) {
+      out.append('{').append(labels);
+      if (extraLabel != null) {
+        out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+      }
+      out.append('}');
+    }
+    out.append(' ').append(formatNumber(value)).append('\n');
+  }
+
+  private static String formatNumber(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return Double.isNaN(value) ? "NaN" : (value > 0 ? "+Inf" : "-Inf");
+    }
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+}
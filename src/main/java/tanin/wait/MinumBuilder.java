@@ -22,22 +22,29 @@ import static com.renomad.minum.web.RequestLine.Method.GET;
 public class MinumBuilder {
   private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(MinumBuilder.class.getName());
 
-  public static FullSystem build(int port) {
+  /**
+   * Starts the server. On SIGTERM or SIGINT, {@code shutdown} runs instead of stopping the server right away, so that
+   * it can drain first. It must stop the server.
+   */
+  public static FullSystem build(int port, ServerConfig config, Runnable shutdown) {
     var props = new Properties();
     props.setProperty("SERVER_PORT", "" + port);
     props.setProperty("LOG_LEVELS", "ASYNC_ERROR,AUDIT");
     props.setProperty("IS_THE_BRIG_ENABLED", "false");
+    props.setProperty("KEEP_ALIVE_TIMEOUT_SECONDS", "" + Math.max(1, config.keepAliveTimeout().toSeconds()));
+    props.setProperty("SOCKET_TIMEOUT_MILLIS", "" + config.socketTimeout().toMillis());
+    props.setProperty("MAX_READ_SIZE_BYTES", "" + config.maxReadBytes());
 
     var executor = Executors.newVirtualThreadPerTaskExecutor();
     var constants = new Constants(props);
     var context = new Context(executor, constants, new Logger(constants, executor, "primary logger"));
     var minum = new FullSystem(context).start();
 
-    Runtime.getRuntime().addShutdownHook(new Thread(minum::shutdown));
+    Runtime.getRuntime().addShutdownHook(new Thread(shutdown));
 
     sun.misc.Signal.handle(new sun.misc.Signal("INT"), sig -> {
       logger.info("Received SIGINT signal. Shutting down...");
-      minum.shutdown();
+      shutdown.run();
     });
 
     return minum;
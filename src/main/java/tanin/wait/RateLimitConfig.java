@@ -0,0 +1,32 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the token-bucket rate limits on `POST /write`.
+ *
+ * @param trustForwardedFor whether to take the client IP from X-Forwarded-For. Enable it only behind a proxy that sets
+ *                          the header, e.g. Render.com. Otherwise, every client can pick its own IP.
+ * @param maxBuckets the max number of tracked keys. Idle buckets are evicted every {@code idleSweepInterval}.
+ */
+public record RateLimitConfig(
+  boolean enabled,
+  double perIpRatePerSecond,
+  int perIpBurst,
+  double perGroupRatePerSecond,
+  int perGroupBurst,
+  boolean trustForwardedFor,
+  int maxBuckets,
+  Duration idleSweepInterval
+) {
+  public static final RateLimitConfig DEFAULT = new RateLimitConfig(
+    false,
+    1,
+    10,
+    20,
+    100,
+    false,
+    100000,
+    Duration.ofMinutes(1)
+  );
+}
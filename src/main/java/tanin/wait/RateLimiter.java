@@ -0,0 +1,83 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A lock-free token-bucket rate limiter per key.
+ */
+public class RateLimiter {
+  private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+  private final String name;
+  private final long emissionIntervalNanos;
+  private final long burstToleranceNanos;
+  private final int maxBuckets;
+  private final long idleSweepIntervalNanos;
+
+  // The theoretical arrival time of each key (GCRA). One in the past means a full bucket, which can be evicted.
+  private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+  public RateLimiter(String name, double ratePerSecond, int burst, int maxBuckets, Duration idleSweepInterval) {
+    this.name = name;
+    this.emissionIntervalNanos = (long) (1_000_000_000L / ratePerSecond);
+    this.burstToleranceNanos = emissionIntervalNanos * (Math.max(1, burst) - 1);
+    this.maxBuckets = maxBuckets;
+    this.idleSweepIntervalNanos = idleSweepInterval.toNanos();
+  }
+
+  /**
+   * Returns null when the request is allowed, or how long the caller should wait otherwise.
+   */
+  public Duration tryAcquire(String key) {
+    var now = System.nanoTime();
+    maybeSweep(now);
+
+    var bucket = buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() >= maxBuckets) {
+        sweep(now);
+        if (buckets.size() >= maxBuckets) {
+          // Failing open is better than rejecting every new client. The other limits still apply.
+          return null;
+        }
+      }
+      bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    while (true) {
+      var stored = bucket.get();
+      var arrival = Math.max(stored, now);
+      var waitNanos = arrival - now - burstToleranceNanos;
+      if (waitNanos > 0) {
+        return Duration.ofNanos(waitNanos);
+      }
+      if (bucket.compareAndSet(stored, arrival + emissionIntervalNanos)) {
+        return null;
+      }
+    }
+  }
+
+  private void maybeSweep(long now) {
+    var last = lastSweepNanos.get();
+    if (now - last >= idleSweepIntervalNanos && lastSweepNanos.compareAndSet(last, now)) {
+      sweep(now);
+    }
+  }
+
+  private void sweep(long now) {
+    var before = buckets.size();
+    buckets.entrySet().removeIf(e -> e.getValue().get() <= now);
+    var evicted = before - buckets.size();
+    if (evicted > 0) {
+      logger.fine("Evicted " + evicted + " idle bucket(s) from the " + name + " rate limiter");
+    }
+  }
+
+  public int size() {
+    return buckets.size();
+  }
+}
@@ -0,0 +1,14 @@
+package tanin.wait;
+
+/**
+ * Settings of `GET /stats` and `GET /position`.
+ *
+ * @param token the bearer token that the requests must send in `Authorization`. Empty disables them, and they answer 404.
+ */
+public record ReadApiConfig(
+  String token
+) {
+  public static final ReadApiConfig DEFAULT = new ReadApiConfig(
+    ""
+  );
+}
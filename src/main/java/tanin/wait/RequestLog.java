@@ -0,0 +1,40 @@
+package tanin.wait;
+
+import com.renomad.minum.web.StatusLine;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * The line logged for every request. Its parts are the record's parameters, so it is formatted off the request thread.
+ */
+class RequestLog {
+  static final Logger logger = Logger.getLogger("tanin.wait.requests");
+
+  private final double successSampleRate;
+
+  RequestLog(double successSampleRate) {
+    this.successSampleRate = successSampleRate;
+  }
+
+  static RequestLog fromLogManager() {
+    var value = LogManager.getLogManager().getProperty("tanin.wait.requests.successSampleRate");
+    return new RequestLog(value == null || value.isBlank() ? 1 : Double.parseDouble(value.trim()));
+  }
+
+  void log(String method, String path, StatusLine.StatusCode status) {
+    if (!logger.isLoggable(Level.INFO)) {
+      return;
+    }
+    if (status.code >= 200 && status.code < 300 && !isSampled()) {
+      return;
+    }
+    logger.log(Level.INFO, "{0} {1} {2}", new Object[] {method, path, status});
+  }
+
+  private boolean isSampled() {
+    return successSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < successSampleRate;
+  }
+}
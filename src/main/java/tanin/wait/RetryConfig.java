@@ -0,0 +1,24 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the retries around Google API calls.
+ *
+ * @param maxAttempts the max number of attempts including the first one. 1 disables retries.
+ * @param maxBackoff the cap of the backoff. A Retry-After hint longer than this ends the retries.
+ * @param callTimeout the deadline of a whole call, including the token and every retry.
+ */
+public record RetryConfig(
+  int maxAttempts,
+  Duration initialBackoff,
+  Duration maxBackoff,
+  Duration callTimeout
+) {
+  public static final RetryConfig DEFAULT = new RetryConfig(
+    4,
+    Duration.ofMillis(200),
+    Duration.ofSeconds(5),
+    Duration.ofSeconds(30)
+  );
+}
@@ -0,0 +1,62 @@
+package tanin.wait;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with full jitter that honors Retry-After.
+ */
+public class RetryPolicy {
+  private final RetryConfig config;
+
+  public RetryPolicy(RetryConfig config) {
+    this.config = config;
+  }
+
+  public int maxAttempts() {
+    return config.maxAttempts();
+  }
+
+  /**
+   * Returns the delay before the given retry (1 is the first retry), or null when the Retry-After hint exceeds the max
+   * backoff and retrying is pointless.
+   */
+  public Duration backoff(int retry, Duration retryAfter) {
+    if (retryAfter != null) {
+      return retryAfter.compareTo(config.maxBackoff()) > 0 ? null : retryAfter;
+    }
+
+    var ceiling = config.initialBackoff().toNanos() << Math.min(retry - 1, 30);
+    if (ceiling <= 0 || ceiling > config.maxBackoff().toNanos()) {
+      ceiling = config.maxBackoff().toNanos();
+    }
+    return Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1));
+  }
+
+  /**
+   * Parses Retry-After in either delay-seconds or HTTP-date form.
+   */
+  static Duration parseRetryAfter(HttpHeaders headers) {
+    var value = headers.firstValue("Retry-After").orElse(null);
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+
+    try {
+      return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+    } catch (NumberFormatException e) {
+      // Fall through to the HTTP-date form.
+    }
+
+    try {
+      var date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+      var delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+      return delay.isNegative() ? Duration.ZERO : delay;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the routing table that sends the signups of some groups or origins to their own sheets.
+ *
+ * @param file the JSON routing table. See the README for its format. Empty disables routing.
+ * @param reloadInterval how often the file is checked for changes
+ */
+public record RoutingConfig(
+  String file,
+  Duration reloadInterval
+) {
+  public static final RoutingConfig DEFAULT = new RoutingConfig(
+    "",
+    Duration.ofSeconds(10)
+  );
+}
@@ -0,0 +1,26 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the embedded Minum web server.
+ *
+ * @param keepAliveTimeout how long an idle keep-alive connection is kept open
+ * @param socketTimeout how long a read from a client may block before the connection is dropped
+ * @param maxReadBytes the max number of bytes that Minum reads for the body of one request
+ * @param maxConcurrentRequests the max number of requests handled at once. The rest get 503 right away instead of
+ *                              waiting. The healthcheck and the metrics are never shed. 0 means unbounded.
+ */
+public record ServerConfig(
+  Duration keepAliveTimeout,
+  Duration socketTimeout,
+  int maxReadBytes,
+  int maxConcurrentRequests
+) {
+  public static final ServerConfig DEFAULT = new ServerConfig(
+    Duration.ofSeconds(3),
+    Duration.ofSeconds(7),
+    64 * 1024,
+    0
+  );
+}
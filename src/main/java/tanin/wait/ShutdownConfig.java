@@ -0,0 +1,19 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the graceful shutdown. Keep the two timeouts together below how long the host waits after SIGTERM.
+ *
+ * @param drainTimeout how long the requests in flight may take to finish. New requests get 503 meanwhile.
+ * @param flushTimeout how long the queued signups may take to be written
+ */
+public record ShutdownConfig(
+  Duration drainTimeout,
+  Duration flushTimeout
+) {
+  public static final ShutdownConfig DEFAULT = new ShutdownConfig(
+    Duration.ofSeconds(10),
+    Duration.ofSeconds(15)
+  );
+}
@@ -0,0 +1,31 @@
+package tanin.wait;
+
+/**
+ * What a graceful shutdown managed to finish.
+ *
+ * @param requestsDrained the requests in flight that finished before the drain timeout
+ * @param requestsCut the requests still in flight at the drain timeout
+ * @param signupsFlushed the queued signups that were written
+ * @param signupsFailed the queued signups whose write failed. In journal or store mode, they are retried after the next start.
+ * @param signupsLeft the queued signups that were not written by the flush timeout. In journal or store mode, they
+ *                    are retried after the next start.
+ */
+public record ShutdownReport(
+  int requestsDrained,
+  int requestsCut,
+  long signupsFlushed,
+  long signupsFailed,
+  long signupsLeft
+) {
+  static final ShutdownReport EMPTY = new ShutdownReport(0, 0, 0, 0, 0);
+
+  ShutdownReport plus(ShutdownReport other) {
+    return new ShutdownReport(
+      requestsDrained + other.requestsDrained,
+      requestsCut + other.requestsCut,
+      signupsFlushed + other.signupsFlushed,
+      signupsFailed + other.signupsFailed,
+      signupsLeft + other.signupsLeft
+    );
+  }
+}
@@ -0,0 +1,22 @@
+package tanin.wait;
+
+import java.time.Instant;
+
+/**
+ * One accepted waitlist entry. It becomes one row in the sheet.
+ *
+ * @param origin the Origin header of the request, which may decide the destination. It is not written to the sheet.
+ */
+public record Signup(String email, String group, Instant createdAt, String origin) {
+  public Signup(String email, String group, Instant createdAt) {
+    this(email, group, createdAt, null);
+  }
+
+  public Signup(String email, String group) {
+    this(email, group, Instant.now());
+  }
+
+  public Signup withOrigin(String origin) {
+    return new Signup(email, group, createdAt, origin);
+  }
+}
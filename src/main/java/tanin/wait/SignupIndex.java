@@ -0,0 +1,257 @@
+package tanin.wait;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The normalized emails that have signed up, per group, with their position in line starting at 1.
+ */
+public class SignupIndex {
+  // The position of a signup that is held until the loads finish.
+  private static final int UNNUMBERED = 0;
+  // The map entry, the String and its array header, and the boxed position of one email, besides its characters.
+  static final int ENTRY_BYTES = 96;
+
+  private static class Group {
+    final ReentrantLock lock = new ReentrantLock();
+    final HashMap<String, Integer> positions = new HashMap<>();
+    long emailBytes = 0;
+    int lastPosition = 0;
+    // The emails added while loading, in order.
+    final ArrayList<String> unnumbered = new ArrayList<>();
+
+    int nextPosition() {
+      return ++lastPosition;
+    }
+
+    boolean put(String email, int position) {
+      if (positions.putIfAbsent(email, position) != null) {
+        return false;
+      }
+      emailBytes += email.length();
+      return true;
+    }
+
+    void numberHeld() {
+      for (var email : unnumbered) {
+        // Skips the emails that were removed, or were numbered by a load or by an earlier copy of the email.
+        if (positions.getOrDefault(email, -1) == UNNUMBERED) {
+          positions.put(email, nextPosition());
+        }
+      }
+      unnumbered.clear();
+      unnumbered.trimToSize();
+    }
+  }
+
+  private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  static String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private Group group(String group) {
+    return groups.computeIfAbsent(group == null ? "" : group, k -> new Group());
+  }
+
+  public boolean contains(String group, String email) {
+    var g = groups.get(group == null ? "" : group);
+    if (g == null) {
+      return false;
+    }
+
+    var key = normalize(email);
+    g.lock.lock();
+    try {
+      return g.positions.containsKey(key);
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the position of the email in the group, or 0 when it isn't in the group or isn't numbered yet because the
+   * index is loading.
+   */
+  public int position(String group, String email) {
+    var g = groups.get(group == null ? "" : group);
+    if (g == null) {
+      return 0;
+    }
+
+    var key = normalize(email);
+    g.lock.lock();
+    try {
+      return g.positions.getOrDefault(key, 0);
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a new signup. Returns false when the email is already in the group.
+   */
+  public boolean add(String group, String email) {
+    var g = group(group);
+    var key = normalize(email);
+    g.lock.lock();
+    try {
+      // Read under the lock, so that a signup held here is numbered by the finishing load.
+      if (loads.get() > 0) {
+        if (!g.put(key, UNNUMBERED)) {
+          return false;
+        }
+        g.unnumbered.add(key);
+        return true;
+      }
+      if (g.positions.containsKey(key)) {
+        return false;
+      }
+      return g.put(key, g.nextPosition());
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  /**
+   * Starts loading the existing signups with {@link #load}. Every call must be followed by {@link #finishLoading()}.
+   * Meanwhile, new signups are held without a position and are numbered after the loaded ones.
+   */
+  public void startLoading() {
+    loads.incrementAndGet();
+  }
+
+  /**
+   * Adds an existing signup, which goes ahead of the signups added since loading started. Returns false when the email
+   * is already in the group.
+   */
+  public boolean load(String group, String email) {
+    var g = group(group);
+    var key = normalize(email);
+    g.lock.lock();
+    try {
+      var position = g.positions.get(key);
+      if (position != null && position == UNNUMBERED) {
+        // A new signup that turned out to be written already.
+        g.positions.put(key, g.nextPosition());
+        return false;
+      }
+      if (position != null) {
+        return false;
+      }
+      return g.put(key, g.nextPosition());
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  /**
+   * Numbers the signups that were added while loading, once the last load finishes.
+   */
+  public void finishLoading() {
+    if (loads.decrementAndGet() > 0) {
+      return;
+    }
+    for (var g : groups.values()) {
+      g.lock.lock();
+      try {
+        g.numberHeld();
+      } finally {
+        g.lock.unlock();
+      }
+    }
+  }
+
+  public boolean isLoading() {
+    return loads.get() > 0;
+  }
+
+  /**
+   * Forgets a signup that was accepted into the index but could not be recorded. It leaves a gap in the positions
+   * unless it was the last one numbered.
+   */
+  public void remove(String group, String email) {
+    var g = group(group);
+    var key = normalize(email);
+    g.lock.lock();
+    try {
+      var position = g.positions.remove(key);
+      if (position == null) {
+        return;
+      }
+      g.emailBytes -= key.length();
+      if (position != UNNUMBERED && position == g.lastPosition) {
+        g.lastPosition--;
+      }
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  public long size() {
+    var total = 0L;
+    for (var g : groups.values()) {
+      g.lock.lock();
+      try {
+        total += g.positions.size();
+      } finally {
+        g.lock.unlock();
+      }
+    }
+    return total;
+  }
+
+  public int size(String group) {
+    var g = groups.get(group == null ? "" : group);
+    if (g == null) {
+      return 0;
+    }
+
+    g.lock.lock();
+    try {
+      return g.positions.size();
+    } finally {
+      g.lock.unlock();
+    }
+  }
+
+  /**
+   * The number of signups in each group. Signups without a group are counted under the empty string.
+   */
+  public Map<String, Long> sizeByGroup() {
+    var sizes = new TreeMap<String, Long>();
+    for (var entry : groups.entrySet()) {
+      var g = entry.getValue();
+      g.lock.lock();
+      try {
+        sizes.put(entry.getKey(), (long) g.positions.size());
+      } finally {
+        g.lock.unlock();
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * An estimate of the heap used by the emails and their positions.
+   */
+  public long memoryBytes() {
+    var total = 0L;
+    for (var g : groups.values()) {
+      g.lock.lock();
+      try {
+        total += (long) g.positions.size() * ENTRY_BYTES + g.emailBytes;
+      } finally {
+        g.lock.unlock();
+      }
+    }
+    return total;
+  }
+}
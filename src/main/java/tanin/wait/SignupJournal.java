@@ -0,0 +1,516 @@
+package tanin.wait;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of accepted signups on local disk, split into segments and trimmed behind a checkpoint.
+ */
+public class SignupJournal implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(SignupJournal.class.getName());
+
+  static final String SEGMENT_PREFIX = "segment-";
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String CHECKPOINT_FILE = "checkpoint";
+  // The payload length, the sequence and the CRC32 of the payload come before the payload.
+  static final int HEADER_BYTES = 4 + 8 + 4;
+
+  public record Entry(long sequence, Signup signup) {}
+
+  private final Path directory;
+  private final long maxSegmentBytes;
+  private final boolean retainAcknowledged;
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final ReentrantLock syncLock = new ReentrantLock();
+  private final ReentrantLock acknowledgeLock = new ReentrantLock();
+
+  // Guarded by writeLock.
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private FileChannel active;
+  private long activeSize;
+  private long nextSequence;
+  private boolean closed = false;
+
+  private volatile long writtenSequence;
+  private final AtomicLong durableSequence = new AtomicLong();
+
+  // Guarded by acknowledgeLock.
+  private long checkpoint;
+  private final TreeSet<Long> acknowledgedAhead = new TreeSet<>();
+
+  private final List<Entry> unacknowledgedAtOpen;
+
+  private SignupJournal(Path directory, long maxSegmentBytes, boolean retainAcknowledged) throws IOException {
+    this.directory = directory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.retainAcknowledged = retainAcknowledged;
+
+    Files.createDirectories(directory);
+    try (var files = Files.list(directory)) {
+      files
+        .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX) && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+        .forEach(p -> segments.put(parseFirstSequence(p), p));
+    }
+
+    var checkpointFile = directory.resolve(CHECKPOINT_FILE);
+    if (Files.exists(checkpointFile)) {
+      checkpoint = Long.parseLong(Files.readString(checkpointFile).trim());
+    } else {
+      checkpoint = segments.isEmpty() ? 0 : segments.firstKey() - 1;
+    }
+
+    unacknowledgedAtOpen = new ArrayList<>();
+    nextSequence = segments.isEmpty() ? checkpoint + 1 : segments.lastKey();
+
+    for (var segment : segments.entrySet()) {
+      var isLast = segment.getKey().equals(segments.lastKey());
+      var lastSequence = scan(segment.getValue(), isLast, unacknowledgedAtOpen);
+      nextSequence = Math.max(nextSequence, lastSequence + 1);
+    }
+
+    writtenSequence = nextSequence - 1;
+    durableSequence.set(nextSequence - 1);
+
+    if (segments.isEmpty()) {
+      openSegment(nextSequence);
+    } else {
+      var last = segments.lastEntry().getValue();
+      active = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      activeSize = active.size();
+    }
+  }
+
+  public static SignupJournal open(Path directory, long maxSegmentBytes) throws IOException {
+    return new SignupJournal(directory, maxSegmentBytes, false);
+  }
+
+  /**
+   * @param retainAcknowledged whether to keep the segments whose entries are all acknowledged
+   */
+  public static SignupJournal open(Path directory, long maxSegmentBytes, boolean retainAcknowledged) throws IOException {
+    return new SignupJournal(directory, maxSegmentBytes, retainAcknowledged);
+  }
+
+  /**
+   * The entries that had not been acknowledged when the journal was opened, in order.
+   */
+  public List<Entry> unacknowledgedAtOpen() {
+    return unacknowledgedAtOpen;
+  }
+
+  /**
+   * Writes the signup and returns once it is durable on disk.
+   */
+  public Entry append(Signup signup) throws IOException {
+    var payload = encode(signup);
+    long sequence;
+
+    writeLock.lock();
+    try {
+      if (closed) {
+        throw new IOException("The journal is closed");
+      }
+
+      if (activeSize > 0 && activeSize + HEADER_BYTES + payload.length > maxSegmentBytes) {
+        rollOver();
+      }
+
+      sequence = nextSequence++;
+      var buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+      buffer.putInt(payload.length).putLong(sequence).putInt(checksum(payload)).put(payload).flip();
+      while (buffer.hasRemaining()) {
+        active.write(buffer);
+      }
+      activeSize += HEADER_BYTES + payload.length;
+      writtenSequence = sequence;
+    } finally {
+      writeLock.unlock();
+    }
+
+    awaitDurable(sequence);
+    return new Entry(sequence, signup);
+  }
+
+  private void awaitDurable(long sequence) throws IOException {
+    if (durableSequence.get() >= sequence) {
+      return;
+    }
+
+    syncLock.lock();
+    try {
+      if (durableSequence.get() >= sequence) {
+        return;
+      }
+
+      FileChannel channel;
+      long target;
+      writeLock.lock();
+      try {
+        channel = active;
+        target = writtenSequence;
+      } finally {
+        writeLock.unlock();
+      }
+
+      try {
+        channel.force(false);
+      } catch (ClosedChannelException e) {
+        // The segment was rolled over or the journal was closed. Both force the channel before closing it.
+      }
+      durableSequence.accumulateAndGet(target, Math::max);
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  /**
+   * Marks the entries as shipped. The checkpoint advances only over a contiguous run of acknowledged entries.
+   */
+  public void acknowledge(Collection<Entry> entries) throws IOException {
+    long newCheckpoint;
+
+    acknowledgeLock.lock();
+    try {
+      for (var entry : entries) {
+        if (entry.sequence() > checkpoint) {
+          acknowledgedAhead.add(entry.sequence());
+        }
+      }
+
+      var previous = checkpoint;
+      while (acknowledgedAhead.remove(checkpoint + 1)) {
+        checkpoint++;
+      }
+
+      if (checkpoint == previous) {
+        return;
+      }
+      newCheckpoint = checkpoint;
+
+      var temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+      Files.writeString(temp, "" + newCheckpoint, StandardCharsets.UTF_8);
+      Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      acknowledgeLock.unlock();
+    }
+
+    if (!retainAcknowledged) {
+      compact(newCheckpoint);
+    }
+  }
+
+  public long checkpoint() {
+    acknowledgeLock.lock();
+    try {
+      return checkpoint;
+    } finally {
+      acknowledgeLock.unlock();
+    }
+  }
+
+  /**
+   * Passes every entry on disk to the consumer, in order.
+   */
+  public void forEach(Consumer<Entry> consumer) throws IOException {
+    for (var segment : snapshotSegments(Long.MIN_VALUE)) {
+      readSegment(segment, (sequence, payload) -> {
+        consumer.accept(new Entry(sequence, decode(payload)));
+        return true;
+      });
+    }
+  }
+
+  /**
+   * Returns up to {@code maxEntries} of the oldest entries that haven't been acknowledged, in order. The segments are
+   * memory-mapped, and the payloads of the skipped entries are not decoded.
+   */
+  public List<Entry> readUnacknowledged(int maxEntries) throws IOException {
+    return readUnacknowledged(maxEntries, entry -> true);
+  }
+
+  /**
+   * Like {@link #readUnacknowledged(int)} but only returns the entries that pass the filter.
+   */
+  public List<Entry> readUnacknowledged(int maxEntries, Predicate<Entry> filter) throws IOException {
+    long after;
+    TreeSet<Long> ahead;
+    acknowledgeLock.lock();
+    try {
+      after = checkpoint;
+      ahead = new TreeSet<>(acknowledgedAhead);
+    } finally {
+      acknowledgeLock.unlock();
+    }
+    var written = writtenSequence;
+
+    var entries = new ArrayList<Entry>();
+    if (written <= after) {
+      return entries;
+    }
+    for (var segment : snapshotSegments(after + 1)) {
+      readSegment(segment, (sequence, payload) -> {
+        if (sequence > written) {
+          return false;
+        }
+        if (sequence > after && !ahead.contains(sequence)) {
+          var entry = new Entry(sequence, decode(payload));
+          if (filter.test(entry)) {
+            entries.add(entry);
+          }
+        }
+        return entries.size() < maxEntries;
+      });
+      if (entries.size() >= maxEntries) {
+        break;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * The segments that may hold the sequence or later ones.
+   */
+  private List<Path> snapshotSegments(long fromSequence) {
+    writeLock.lock();
+    try {
+      var first = segments.floorKey(fromSequence);
+      return List.copyOf((first == null ? segments : segments.tailMap(first, true)).values());
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @FunctionalInterface
+  private interface EntryVisitor {
+    /**
+     * Returns false to stop reading.
+     */
+    boolean visit(long sequence, byte[] payload) throws IOException;
+  }
+
+  /**
+   * Reads the entries of a segment until its end or a torn entry, which a concurrent append may be writing.
+   */
+  private static void readSegment(Path path, EntryVisitor visitor) throws IOException {
+    MappedByteBuffer buffer;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException e) {
+      // Compacted after the snapshot, so every entry in it has been acknowledged.
+      return;
+    }
+
+    while (buffer.remaining() >= HEADER_BYTES) {
+      var length = buffer.getInt();
+      var sequence = buffer.getLong();
+      var crc = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        return;
+      }
+
+      var payload = new byte[length];
+      buffer.get(payload);
+      if (checksum(payload) != crc || !visitor.visit(sequence, payload)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * The number of entries written but not acknowledged yet.
+   */
+  public long unacknowledgedCount() {
+    acknowledgeLock.lock();
+    try {
+      return writtenSequence - checkpoint - acknowledgedAhead.size();
+    } finally {
+      acknowledgeLock.unlock();
+    }
+  }
+
+  /**
+   * The size of the segments on disk.
+   */
+  public long sizeBytes() throws IOException {
+    var total = 0L;
+    for (var segment : snapshotSegments(Long.MIN_VALUE)) {
+      try {
+        total += Files.size(segment);
+      } catch (NoSuchFileException e) {
+        // Compacted after the snapshot.
+      }
+    }
+    return total;
+  }
+
+  int segmentCount() {
+    writeLock.lock();
+    try {
+      return segments.size();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void compact(long checkpoint) throws IOException {
+    writeLock.lock();
+    try {
+      while (segments.size() > 1) {
+        var first = segments.firstEntry();
+        var nextFirstSequence = segments.higherKey(first.getKey());
+        if (nextFirstSequence - 1 > checkpoint) {
+          break;
+        }
+        Files.deleteIfExists(first.getValue());
+        segments.remove(first.getKey());
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void rollOver() throws IOException {
+    active.force(false);
+    active.close();
+    durableSequence.accumulateAndGet(writtenSequence, Math::max);
+    openSegment(nextSequence);
+  }
+
+  private void openSegment(long firstSequence) throws IOException {
+    var path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    active = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    activeSize = active.size();
+    segments.put(firstSequence, path);
+  }
+
+  private static long parseFirstSequence(Path path) {
+    var name = path.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * Reads a segment and collects the entries after the checkpoint. A torn entry at the end of the last segment is
+   * what a crash in the middle of a write leaves behind, so it is truncated.
+   *
+   * @return the last valid sequence in the segment, or 0 when there is none
+   */
+  private long scan(Path path, boolean isLast, List<Entry> unacknowledged) throws IOException {
+    var bytes = Files.readAllBytes(path);
+    var buffer = ByteBuffer.wrap(bytes);
+    var lastSequence = 0L;
+    var validBytes = 0;
+
+    while (buffer.remaining() >= HEADER_BYTES) {
+      var length = buffer.getInt();
+      var sequence = buffer.getLong();
+      var crc = buffer.getInt();
+
+      if (length < 0 || length > buffer.remaining()) {
+        break;
+      }
+
+      var payload = new byte[length];
+      buffer.get(payload);
+      if (checksum(payload) != crc) {
+        break;
+      }
+
+      if (sequence > checkpoint) {
+        unacknowledged.add(new Entry(sequence, decode(payload)));
+      }
+      lastSequence = sequence;
+      validBytes = buffer.position();
+    }
+
+    if (validBytes < bytes.length) {
+      if (isLast) {
+        logger.warning("Truncating " + (bytes.length - validBytes) + " byte(s) of a torn entry at the end of " + path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+          channel.truncate(validBytes);
+          channel.force(false);
+        }
+      } else {
+        logger.severe("The segment " + path + " is corrupted after " + validBytes + " byte(s). The rest is skipped.");
+      }
+    }
+
+    return lastSequence;
+  }
+
+  static byte[] encode(Signup signup) throws IOException {
+    var bytes = new ByteArrayOutputStream(64);
+    try (var out = new DataOutputStream(bytes)) {
+      out.writeLong(signup.createdAt().getEpochSecond());
+      out.writeInt(signup.createdAt().getNano());
+      out.writeUTF(signup.email());
+      out.writeBoolean(signup.group() != null);
+      if (signup.group() != null) {
+        out.writeUTF(signup.group());
+      }
+      out.writeBoolean(signup.origin() != null);
+      if (signup.origin() != null) {
+        out.writeUTF(signup.origin());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  static Signup decode(byte[] payload) throws IOException {
+    try (var in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      var createdAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+      var email = in.readUTF();
+      var group = in.readBoolean() ? in.readUTF() : null;
+      // Entries written before the origin was recorded end here.
+      var origin = in.available() > 0 && in.readBoolean() ? in.readUTF() : null;
+      return new Signup(email, group, createdAt, origin);
+    }
+  }
+
+  private static int checksum(byte[] payload) {
+    var crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writeLock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      active.force(false);
+      active.close();
+      durableSequence.accumulateAndGet(writtenSequence, Math::max);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+}
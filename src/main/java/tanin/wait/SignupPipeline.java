@@ -0,0 +1,423 @@
+package tanin.wait;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes a parsed signup to its sheet: the group limit, the store or the destination's queue, the deduplication and the
+ * exports.
+ */
+class SignupPipeline {
+  private static final Logger logger = Logger.getLogger(SignupPipeline.class.getName());
+
+  enum Outcome { WRITTEN, ACCEPTED, DUPLICATE, BUSY, RATE_LIMITED }
+
+  /**
+   * What happened to a signup. `retryAfter` is set when it was turned away.
+   */
+  record Result(Outcome outcome, Duration retryAfter) {
+    static final Result WRITTEN = new Result(Outcome.WRITTEN, null);
+    static final Result ACCEPTED = new Result(Outcome.ACCEPTED, null);
+    static final Result DUPLICATE = new Result(Outcome.DUPLICATE, null);
+  }
+
+  /**
+   * Identifies the signups that are the same write: the group and the normalized email.
+   */
+  record WriteKey(String group, String email) {
+    static WriteKey of(Signup signup) {
+      return new WriteKey(signup.group() == null ? "" : signup.group(), SignupIndex.normalize(signup.email()));
+    }
+  }
+
+  final WaitConfig config;
+  final Metrics metrics;
+  // The webhook export uses the sheets' HttpClient.
+  private final GoogleApiClients googleClients;
+  SignupSink sink;
+  // Builds the sink of a routed destination.
+  Function<SignupRouter.DestinationConfig, SignupSink> destinationSinkFactory;
+
+  SignupJournal journal;
+  SignupStore store;
+  Destination defaultDestination;
+  SignupRouter router;
+  final ConcurrentHashMap<SignupRouter.DestinationConfig, Destination> routedDestinations = new ConcurrentHashMap<>();
+  // The threads closing the destinations that were dropped from the routing table.
+  final Set<Thread> retiringDestinations = ConcurrentHashMap.newKeySet();
+  final CountDownLatch stopping = new CountDownLatch(1);
+  SignupIndex signupIndex;
+  // The secondary sinks that get a copy of every accepted signup.
+  final List<Exporter> exporters = new ArrayList<>();
+  // The direct writes in flight, so that concurrent duplicates share one write.
+  final SingleFlight<WriteKey, Void> inFlightWrites = new SingleFlight<>();
+  RateLimiter groupRateLimiter;
+
+  SignupPipeline(
+    SignupSink sink,
+    Function<SignupRouter.DestinationConfig, SignupSink> destinationSinkFactory,
+    WaitConfig config,
+    Metrics metrics,
+    GoogleApiClients googleClients
+  ) {
+    this.sink = sink;
+    this.destinationSinkFactory = destinationSinkFactory;
+    this.config = config;
+    this.metrics = metrics;
+    this.googleClients = googleClients;
+  }
+
+  void start() {
+    if (config.store().enabled() && (config.journal().enabled() || config.writeBehind().enabled())) {
+      throw new IllegalArgumentException("The store replaces the journal and write-behind. Enable only one of them.");
+    }
+
+    if (config.journal().enabled()) {
+      try {
+        journal = SignupJournal.open(Path.of(config.journal().directory()), config.journal().maxSegmentBytes());
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to open the journal at " + config.journal().directory(), e);
+      }
+    }
+
+    defaultDestination = new Destination("default", sink, config, journal, metrics.withLabels("destination", "default"));
+    if (!config.routing().file().isEmpty()) {
+      router = new SignupRouter(Path.of(config.routing().file()), config.routing().reloadInterval());
+      router.onReload(this::retireStaleDestinations);
+    }
+
+    if (config.store().enabled()) {
+      try {
+        store = SignupStore.open(config.store(), signup -> getDestination(signup).sink);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to open the store at " + config.store().directory(), e);
+      }
+      // The store's index already holds every signup, in order.
+      signupIndex = store.index;
+    } else if (config.deduplication().enabled()) {
+      signupIndex = new SignupIndex();
+    }
+
+    if (config.csvExport().enabled()) {
+      var csvExport = config.csvExport();
+      try {
+        exporters.add(new Exporter("csv", new CsvFileSink(Path.of(csvExport.directory()), csvExport.maxFileBytes()), csvExport.queue(), metrics));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to open the CSV export at " + csvExport.directory(), e);
+      }
+    }
+    if (config.webhook().enabled()) {
+      var webhook = config.webhook();
+      exporters.add(new Exporter("webhook", new WebhookSink(URI.create(webhook.url()), webhook.timeout(), new RetryPolicy(config.retry()), googleClients.client()), webhook.queue(), metrics));
+    }
+
+    if (journal != null) {
+      JournalReplayer.replay(journal, entry -> getDestination(entry.signup()).journalQueue);
+    }
+
+    if (signupIndex != null && store == null) {
+      // Before the port is bound, so that the first signups are numbered after the loaded ones.
+      signupIndex.startLoading();
+      Thread.ofVirtual().name("signup-index-warmer").start(() -> {
+        try {
+          warmSignupIndex();
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Unable to warm the signup index. Duplicates already in the sink will be written again.", e);
+        } finally {
+          signupIndex.finishLoading();
+        }
+      });
+    }
+
+    if (config.rateLimit().enabled()) {
+      var rateLimit = config.rateLimit();
+      groupRateLimiter = new RateLimiter("group", rateLimit.perGroupRatePerSecond(), rateLimit.perGroupBurst(), rateLimit.maxBuckets(), rateLimit.idleSweepInterval());
+    }
+
+    registerMetrics();
+  }
+
+  void registerMetrics() {
+    if (store != null) {
+      metrics.gauge("wait_store_signups", "The number of signups in the local store", () -> store.size());
+      metrics.gauge("wait_store_pending_export", "The number of stored signups waiting to be exported", () -> store.pendingExport());
+      metrics.counter("wait_store_exported_total", "The stored signups exported to the sheets", () -> store.exportedCount.get());
+      metrics.counter("wait_store_export_failed_total", "The stored signups whose export failed and will be retried", () -> store.failedCount.get());
+    }
+    if (journal != null) {
+      metrics.gauge("wait_journal_checkpoint", "The sequence of the last shipped journal entry", () -> journal.checkpoint());
+    }
+    metrics.counter("wait_write_coalesced_total", "The signups that shared the write of an identical signup in flight", () -> inFlightWrites.sharedCount.get());
+    if (signupIndex != null) {
+      metrics.gauge("wait_signup_index_size", "The number of signups in the signup index", () -> signupIndex.size());
+      metrics.gauge("wait_signup_index_bytes", "The memory used by the signup index", () -> signupIndex.memoryBytes());
+    }
+    if (groupRateLimiter != null) {
+      metrics.gauge("wait_rate_limit_buckets", "The number of tracked rate limit buckets", () -> groupRateLimiter.size(), "key", "group");
+    }
+  }
+
+  /**
+   * Writes or queues the signup. `origin` picks its destination when groups are routed.
+   */
+  Result write(Signup signup, String origin) throws Exception {
+    var email = signup.email();
+    var group = signup.group();
+    // Before the destination is looked up, so that a limited request doesn't create one for a new group.
+    if (groupRateLimiter != null) {
+      var retryAfter = groupRateLimiter.tryAcquire(group == null ? "" : group);
+      if (retryAfter != null) {
+        return new Result(Outcome.RATE_LIMITED, retryAfter);
+      }
+    }
+
+    if (store != null) {
+      if (!store.append(signup)) {
+        return Result.DUPLICATE;
+      }
+      export(signup);
+      return Result.ACCEPTED;
+    }
+
+    if (router != null) {
+      signup = signup.withOrigin(origin);
+    }
+    var destination = getDestination(signup);
+
+    if (destination.isQueued()) {
+      // Claims the email up front so that concurrent duplicates don't both get queued.
+      if (signupIndex != null && !signupIndex.add(group, email)) {
+        return Result.DUPLICATE;
+      }
+
+      var accepted = false;
+      try {
+        accepted = destination.enqueue(signup);
+      } finally {
+        if (!accepted && signupIndex != null) {
+          signupIndex.remove(group, email);
+        }
+      }
+
+      if (!accepted) {
+        return new Result(Outcome.BUSY, Duration.ofSeconds(1));
+      }
+      export(signup);
+      return Result.ACCEPTED;
+    }
+
+    if (signupIndex != null && signupIndex.contains(group, email)) {
+      return Result.DUPLICATE;
+    }
+
+    try {
+      writeOnce(destination, signup);
+    } catch (CircuitBreaker.OpenException e) {
+      return new Result(Outcome.BUSY, e.retryAfter);
+    } catch (ConcurrencyLimiter.QueueTimeoutException e) {
+      return new Result(Outcome.BUSY, Duration.ofSeconds(1));
+    }
+    return Result.WRITTEN;
+  }
+
+  /**
+   * The destination of the signup. A routed destination is created on first use, and again after its settings change
+   * in the routing table.
+   */
+  Destination getDestination(Signup signup) {
+    if (router == null) {
+      return defaultDestination;
+    }
+    var destinationConfig = router.route(signup.group(), signup.origin());
+    if (destinationConfig == null) {
+      return defaultDestination;
+    }
+
+    var destination = routedDestinations.get(destinationConfig);
+    if (destination != null) {
+      return destination;
+    }
+    return routedDestinations.computeIfAbsent(destinationConfig, c -> {
+      var created = new Destination(c.name(), destinationSinkFactory.apply(c), config, journal, metrics.withLabels("destination", c.name()));
+      logger.info("Created the destination " + c.name() + " for the sheet " + c.sheetId() + "/" + c.sheetName());
+      if (signupIndex != null && store == null && config.deduplication().warmFromSheet()) {
+        warmSignupIndexInBackground(created.sink);
+      }
+      return created;
+    });
+  }
+
+  /**
+   * Closes the routed destinations that the reloaded table no longer routes to, e.g. the old settings of a changed
+   * destination, so that their connections, flusher and token refresher don't live on until the shutdown. The requests
+   * in flight that picked one get the drain timeout to hand over their signups first.
+   */
+  void retireStaleDestinations() {
+    var current = router.destinations();
+    for (var stale : routedDestinations.keySet()) {
+      if (current.contains(stale)) {
+        continue;
+      }
+      var destination = routedDestinations.remove(stale);
+      if (destination == null) {
+        continue;
+      }
+      logger.info("Closing the destination " + stale.name() + " for the sheet " + stale.sheetId() + "/" + stale.sheetName() + ", which is no longer routed to");
+      var retirer = Thread.ofVirtual().name("destination-retirer").unstarted(() -> {
+        try {
+          // Cut short when the server stops.
+          stopping.await(config.shutdown().drainTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        destination.close(config.shutdown().flushTimeout());
+        retiringDestinations.remove(Thread.currentThread());
+      });
+      retiringDestinations.add(retirer);
+      retirer.start();
+    }
+  }
+
+  /**
+   * Hands a copy of an accepted signup to each exporter without waiting.
+   */
+  void export(Signup signup) {
+    for (var exporter : exporters) {
+      exporter.offer(signup);
+    }
+  }
+
+  /**
+   * Writes the signup directly. Identical signups in flight share this write, e.g. a double submit.
+   */
+  void writeOnce(Destination destination, Signup signup) throws Exception {
+    inFlightWrites.run(WriteKey.of(signup), () -> {
+      // Checked again under the key, since the previous write may have finished after the caller's check.
+      if (signupIndex != null && signupIndex.contains(signup.group(), signup.email())) {
+        return null;
+      }
+      destination.write(signup);
+      // Before the write stops being in flight, so that a later duplicate is caught by the index.
+      if (signupIndex != null) {
+        signupIndex.add(signup.group(), signup.email());
+      }
+      export(signup);
+      return null;
+    });
+  }
+
+  /**
+   * Loads the signups that are already in the sink or waiting in the journal into the index, oldest first, so that
+   * they are numbered in the order they signed up. Until it finishes, duplicates may still be written.
+   */
+  void warmSignupIndex() throws Exception {
+    var startTime = System.currentTimeMillis();
+
+    if (config.deduplication().warmFromSheet()) {
+      sink.readAll(signup -> signupIndex.load(signup.group(), signup.email()));
+    }
+
+    if (journal != null) {
+      for (var entry : journal.unacknowledgedAtOpen()) {
+        signupIndex.load(entry.signup().group(), entry.signup().email());
+      }
+    }
+
+    logger.info(
+      "Indexed " + signupIndex.size() + " signups in " + (System.currentTimeMillis() - startTime) + "ms. " +
+        "The index uses " + signupIndex.memoryBytes() + " bytes."
+    );
+  }
+
+  private void warmSignupIndexInBackground(SignupSink routedSink) {
+    // Before the signup that created the destination is added, so that it is numbered after the loaded ones.
+    signupIndex.startLoading();
+    Thread.ofVirtual().name("signup-index-warmer").start(() -> {
+      try {
+        var startTime = System.currentTimeMillis();
+        routedSink.readAll(signup -> signupIndex.load(signup.group(), signup.email()));
+        logger.info("Indexed the signups of a routed destination in " + (System.currentTimeMillis() - startTime) + "ms");
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Unable to warm the signup index from a routed destination. Its existing duplicates will be written again.", e);
+      } finally {
+        signupIndex.finishLoading();
+      }
+    });
+  }
+
+  /**
+   * Whether the signups left after a shutdown are on disk for the next start.
+   */
+  boolean isDurable() {
+    return journal != null || store != null;
+  }
+
+  /**
+   * Writes the queued signups within the timeout, then closes the sinks and the journal.
+   */
+  ShutdownReport close(Duration timeout) {
+    if (router != null) {
+      router.close();
+    }
+
+    var deadline = System.nanoTime() + timeout.toNanos();
+    // The destinations dropped from the routing table are closed alongside the others.
+    stopping.countDown();
+    var signups = ShutdownReport.EMPTY;
+    // Before the destinations, whose sinks it exports to.
+    if (store != null) {
+      signups = signups.plus(store.close(remainingUntil(deadline)));
+    }
+    if (defaultDestination != null) {
+      signups = signups.plus(defaultDestination.close(remainingUntil(deadline)));
+    } else {
+      sink.close();
+    }
+    for (var destination : routedDestinations.values()) {
+      signups = signups.plus(destination.close(remainingUntil(deadline)));
+    }
+    for (var retiring : retiringDestinations) {
+      try {
+        retiring.join(remainingUntil(deadline));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // In parallel, so that a slow export doesn't use up the time of the others. The copies aren't counted in the
+    // report, since their signups already are.
+    var exportTimeout = remainingUntil(deadline);
+    var closing = exporters.stream()
+      .map(exporter -> Thread.ofVirtual().name("exporter-close").start(() -> exporter.close(exportTimeout)))
+      .toList();
+    for (var thread : closing) {
+      try {
+        thread.join(exportTimeout.plusSeconds(1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to close the journal", e);
+      }
+    }
+    return signups;
+  }
+
+  private static Duration remainingUntil(long deadlineNanos) {
+    return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+  }
+}
@@ -0,0 +1,180 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps a group or an Origin to the destination of its signups. The table is reloaded when its file changes; a file
+ * that fails to parse leaves the current table in place.
+ */
+public class SignupRouter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(SignupRouter.class.getName());
+
+  /**
+   * @param serviceAccountKeyJson the content of the key, or null for the default service account
+   */
+  public record DestinationConfig(String name, String sheetId, String sheetName, String serviceAccountKeyJson) {}
+
+  record Table(Map<String, DestinationConfig> byGroup, Map<String, DestinationConfig> byOrigin) {}
+
+  private final Path file;
+  private final ScheduledExecutorService reloader;
+  private volatile Table table;
+  private volatile Runnable onReload = () -> {};
+  private volatile long lastModified;
+
+  public SignupRouter(Path file, Duration reloadInterval) {
+    this.file = file;
+    try {
+      lastModified = Files.getLastModifiedTime(file).toMillis();
+      table = parse(Files.readString(file), file.toAbsolutePath().getParent());
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read the routing table at " + file, e);
+    }
+    logger.info("Loaded the routing table: " + describe(table));
+
+    reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+      var thread = new Thread(r, "routing-table-reloader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  void reloadIfChanged() {
+    try {
+      var modified = Files.getLastModifiedTime(file).toMillis();
+      if (modified == lastModified) {
+        return;
+      }
+      table = parse(Files.readString(file), file.toAbsolutePath().getParent());
+      lastModified = modified;
+      logger.info("Reloaded the routing table: " + describe(table));
+      onReload.run();
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Unable to reload the routing table at " + file + ". The current one stays.", e);
+    }
+  }
+
+  /**
+   * The destination of the signup, or null for the default sheet.
+   */
+  public DestinationConfig route(String group, String origin) {
+    var current = table;
+    if (group != null) {
+      var destination = current.byGroup().get(group);
+      if (destination != null) {
+        return destination;
+      }
+    }
+    if (origin != null) {
+      return current.byOrigin().get(origin.toLowerCase());
+    }
+    return null;
+  }
+
+  /**
+   * Runs the listener on the reloader thread after each reload.
+   */
+  void onReload(Runnable listener) {
+    this.onReload = listener;
+  }
+
+  /**
+   * The destinations that the current table routes to.
+   */
+  Set<DestinationConfig> destinations() {
+    var current = table;
+    var all = new HashSet<>(current.byGroup().values());
+    all.addAll(current.byOrigin().values());
+    return all;
+  }
+
+  static Table parse(String json, Path baseDirectory) throws IOException {
+    var root = Json.parse(json).asObject();
+
+    var destinations = new HashMap<String, DestinationConfig>();
+    for (var member : require(root, "destinations").asObject()) {
+      var destination = member.getValue().asObject();
+      destinations.put(member.getName(), new DestinationConfig(
+        member.getName(),
+        requireString(destination, "sheetId", member.getName()),
+        destination.getString("sheetName", "Sheet1"),
+        readServiceAccountKey(destination, baseDirectory)
+      ));
+    }
+
+    var byGroup = new HashMap<String, DestinationConfig>();
+    var byOrigin = new HashMap<String, DestinationConfig>();
+    for (var value : require(root, "routes").asArray()) {
+      var route = value.asObject();
+      var name = requireString(route, "destination", "a route");
+      var destination = destinations.get(name);
+      if (destination == null) {
+        throw new IllegalArgumentException("The route " + route + " points to the unknown destination " + name);
+      }
+
+      var group = route.getString("group", null);
+      var origin = route.getString("origin", null);
+      if (group == null && origin == null) {
+        throw new IllegalArgumentException("The route " + route + " needs a group or an origin");
+      }
+      if (group != null) {
+        byGroup.put(group, destination);
+      }
+      if (origin != null) {
+        byOrigin.put(origin.toLowerCase(), destination);
+      }
+    }
+
+    return new Table(Map.copyOf(byGroup), Map.copyOf(byOrigin));
+  }
+
+  private static String readServiceAccountKey(JsonObject destination, Path baseDirectory) throws IOException {
+    var keyFile = destination.getString("serviceAccountKeyFile", null);
+    if (keyFile == null) {
+      return null;
+    }
+    return Files.readString(baseDirectory.resolve(keyFile));
+  }
+
+  private static JsonValue require(JsonObject json, String name) {
+    var value = json.get(name);
+    if (value == null) {
+      throw new IllegalArgumentException("The routing table needs " + name);
+    }
+    return value;
+  }
+
+  private static String requireString(JsonObject json, String name, String owner) {
+    var value = json.getString(name, null);
+    if (value == null || value.isBlank()) {
+      throw new IllegalArgumentException(owner + " needs " + name);
+    }
+    return value;
+  }
+
+  private static String describe(Table table) {
+    return table.byGroup().size() + " group route(s) and " + table.byOrigin().size() + " origin route(s)";
+  }
+
+  @Override
+  public void close() {
+    reloader.shutdownNow();
+  }
+}
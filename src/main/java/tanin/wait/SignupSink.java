@@ -0,0 +1,43 @@
+package tanin.wait;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Where accepted signups end up. {@link WaitServer} only talks to its sink, so the sink can be swapped for a local one
+ * in tests and load tests.
+ */
+public interface SignupSink extends AutoCloseable {
+  /**
+   * Writes all signups with as few calls as possible. Throws when the signups may not have been written.
+   */
+  void write(List<Signup> signups) throws Exception;
+
+  /**
+   * Like {@link #write(List)} but returns before the signups are written when the sink can. Cancelling the future
+   * abandons the write. A sink without non-blocking I/O writes synchronously.
+   */
+  default CompletableFuture<Void> writeAsync(List<Signup> signups) {
+    try {
+      write(signups);
+      return CompletableFuture.completedFuture(null);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Passes every signup already in the sink to the consumer. A sink that can't be read passes nothing.
+   */
+  default void readAll(Consumer<Signup> consumer) throws Exception {}
+
+  /**
+   * Loads and connects whatever the first write would, so that the first signup after a cold start is as fast as the
+   * rest. It runs in the background after the server is up.
+   */
+  default void warmUp() throws Exception {}
+
+  @Override
+  default void close() {}
+}
@@ -0,0 +1,319 @@
+package tanin.wait;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps every signup in a local append-only log with an index, and exports the new rows to each sheet in large batches.
+ */
+public class SignupStore implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(SignupStore.class.getName());
+
+  /**
+   * @param exported the signups in the sheets. A signup whose export failed is retried and is not counted yet.
+   * @param lastExportAt when the last export finished, or null when nothing has been exported since the start
+   */
+  public record Stats(
+    long signups,
+    long exported,
+    long pendingExport,
+    Map<String, Long> signupsByGroup,
+    long logBytes,
+    Instant lastExportAt
+  ) {}
+
+  private final StoreConfig config;
+  private final SignupJournal log;
+  final SignupIndex index = new SignupIndex();
+  private final Function<Signup, SignupSink> sinkFor;
+  private final AtomicLong signups = new AtomicLong();
+  final AtomicLong exportedCount = new AtomicLong();
+  final AtomicLong failedCount = new AtomicLong();
+  private volatile Instant lastExportAt;
+  private final Thread exporter;
+  // Each sink exports on its own thread, one batch at a time.
+  private final ExecutorService exportExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ConcurrentHashMap<SignupSink, Future<?>> exporting = new ConcurrentHashMap<>();
+  private final Set<Long> exportingSequences = ConcurrentHashMap.newKeySet();
+  // A sink whose export failed is skipped until then.
+  private final ConcurrentHashMap<SignupSink, Long> retryAtNanos = new ConcurrentHashMap<>();
+  // The signups whose failure has been counted.
+  private final Set<Long> failedSequences = ConcurrentHashMap.newKeySet();
+  Duration retryDelay;
+  private volatile boolean closed = false;
+
+  private SignupStore(StoreConfig config, SignupJournal log, Function<Signup, SignupSink> sinkFor) {
+    this.config = config;
+    this.log = log;
+    this.sinkFor = sinkFor;
+    this.retryDelay = config.exportInterval();
+    this.exporter = Thread.ofVirtual().name("store-exporter").unstarted(this::runExporter);
+  }
+
+  /**
+   * Opens the log, rebuilds the index from it and starts the exporter.
+   *
+   * @param sinkFor the sink that the signup is exported to
+   */
+  public static SignupStore open(StoreConfig config, Function<Signup, SignupSink> sinkFor) throws IOException {
+    var startTime = System.currentTimeMillis();
+    var store = new SignupStore(config, SignupJournal.open(Path.of(config.directory()), config.maxSegmentBytes(), true), sinkFor);
+    store.log.forEach(entry -> {
+      store.index.add(entry.signup().group(), entry.signup().email());
+      store.signups.incrementAndGet();
+    });
+    logger.info(
+      "Loaded " + store.signups.get() + " signups from the store in " + (System.currentTimeMillis() - startTime) + "ms. " +
+        store.log.unacknowledgedCount() + " of them are waiting to be exported."
+    );
+    store.exporter.start();
+    return store;
+  }
+
+  /**
+   * Stores the signup and returns once it is durable on disk. Returns false when the email is already in the group.
+   */
+  public boolean append(Signup signup) throws IOException {
+    if (!index.add(signup.group(), signup.email())) {
+      return false;
+    }
+
+    try {
+      log.append(signup);
+    } catch (IOException | RuntimeException e) {
+      index.remove(signup.group(), signup.email());
+      throw e;
+    }
+    signups.incrementAndGet();
+    return true;
+  }
+
+  public boolean contains(String group, String email) {
+    return index.contains(group, email);
+  }
+
+  public long size() {
+    return signups.get();
+  }
+
+  public long pendingExport() {
+    return log.unacknowledgedCount();
+  }
+
+  public Stats stats() throws IOException {
+    var total = size();
+    var pending = pendingExport();
+    return new Stats(total, total - pending, pending, index.sizeByGroup(), log.sizeBytes(), lastExportAt);
+  }
+
+  private void runExporter() {
+    var dispatched = 0;
+    while (!closed) {
+      if (dispatched < config.exportBatchSize()) {
+        try {
+          Thread.sleep(config.exportInterval());
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      try {
+        dispatched = dispatch().size();
+      } catch (Exception e) {
+        dispatched = 0;
+        if (closed) {
+          return;
+        }
+        logger.log(Level.WARNING, "Unable to read the signups to export from the store. Retrying in " + config.exportInterval(), e);
+      }
+    }
+  }
+
+  /**
+   * The exports started by one {@link #dispatch()}.
+   *
+   * @param size the number of signups in them
+   */
+  record Round(int size, List<Future<?>> exports) {}
+
+  /**
+   * Starts exporting one batch of the oldest signups that haven't been exported, skipping the signups of the sinks that
+   * are busy or waiting to retry. Each sink gets one append call on its own thread, so a slow or failing sheet doesn't
+   * hold back the others.
+   */
+  synchronized Round dispatch() throws IOException {
+    var now = System.nanoTime();
+    var entries = log.readUnacknowledged(config.exportBatchSize(), entry -> {
+      if (exportingSequences.contains(entry.sequence())) {
+        return false;
+      }
+      var sink = sinkFor.apply(entry.signup());
+      return !exporting.containsKey(sink) && retryAtNanos.getOrDefault(sink, now) - now <= 0;
+    });
+
+    var bySink = new LinkedHashMap<SignupSink, List<SignupJournal.Entry>>();
+    for (var entry : entries) {
+      bySink.computeIfAbsent(sinkFor.apply(entry.signup()), k -> new ArrayList<>()).add(entry);
+    }
+
+    var exports = new ArrayList<Future<?>>();
+    for (var batch : bySink.entrySet()) {
+      var sink = batch.getKey();
+      var batchEntries = batch.getValue();
+      var export = new FutureTask<Void>(() -> {
+        exportTo(sink, batchEntries);
+        return null;
+      });
+      exporting.put(sink, export);
+      batchEntries.forEach(entry -> exportingSequences.add(entry.sequence()));
+      exportExecutor.execute(export);
+      exports.add(export);
+    }
+    return new Round(entries.size(), exports);
+  }
+
+  private void exportTo(SignupSink sink, List<SignupJournal.Entry> batch) throws Exception {
+    try {
+      sink.write(batch.stream().map(SignupJournal.Entry::signup).toList());
+      log.acknowledge(batch);
+      exportedCount.addAndGet(batch.size());
+      retryAtNanos.remove(sink);
+      batch.forEach(entry -> failedSequences.remove(entry.sequence()));
+    } catch (Exception e) {
+      // A retry of the same signups doesn't count them again.
+      failedCount.addAndGet(batch.stream().filter(entry -> failedSequences.add(entry.sequence())).count());
+      retryAtNanos.put(sink, System.nanoTime() + retryDelay.toNanos());
+      logger.log(Level.WARNING, "Unable to export " + batch.size() + " signup(s) from the store. Retrying them in " + retryDelay, e);
+      throw e;
+    } finally {
+      lastExportAt = Instant.now();
+      batch.forEach(entry -> exportingSequences.remove(entry.sequence()));
+      exporting.remove(sink);
+    }
+  }
+
+  /**
+   * Exports one batch and waits for it. The signups of a sink that fails are retried after the retry delay.
+   *
+   * @return the number of signups in the batch
+   */
+  int export() throws Exception {
+    var round = dispatch();
+    Exception failure = null;
+    for (var export : round.exports()) {
+      try {
+        export.get();
+      } catch (ExecutionException e) {
+        var cause = e.getCause() instanceof Exception c ? c : e;
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return round.size();
+  }
+
+  /**
+   * Stops the exporter and exports what is left until the timeout. The rest stays on disk for the next start.
+   */
+  ShutdownReport close(Duration timeout) {
+    closed = true;
+    exporter.interrupt();
+    var deadline = System.nanoTime() + timeout.toNanos();
+    var exportedBefore = exportedCount.get();
+    var failedBefore = failedCount.get();
+
+    try {
+      exporter.join(timeout);
+      // A virtual thread, so that the wait can be cut off by the deadline.
+      var finalExport = Thread.ofVirtual().name("store-final-export").start(() -> {
+        try {
+          awaitExports();
+          while (true) {
+            var round = dispatch();
+            if (round.size() == 0) {
+              break;
+            }
+            // A sink that fails waits for its retry delay, so the loop moves on to the others.
+            for (var export : round.exports()) {
+              awaitQuietly(export);
+            }
+          }
+        } catch (InterruptedException e) {
+          // The deadline passed.
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Unable to export the rest of the signups. They will be exported after the next start.", e);
+        }
+      });
+      if (!finalExport.join(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())))) {
+        finalExport.interrupt();
+        finalExport.join(Duration.ofSeconds(1));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // Cancels the exports still in flight, whose signups stay on disk.
+    exportExecutor.shutdownNow();
+    try {
+      exportExecutor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      log.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to close the store", e);
+    }
+    return new ShutdownReport(
+      0,
+      0,
+      exportedCount.get() - exportedBefore,
+      failedCount.get() - failedBefore,
+      log.unacknowledgedCount()
+    );
+  }
+
+  private void awaitExports() throws InterruptedException {
+    for (var export : List.copyOf(exporting.values())) {
+      awaitQuietly(export);
+    }
+  }
+
+  private static void awaitQuietly(Future<?> export) throws InterruptedException {
+    try {
+      export.get();
+    } catch (ExecutionException e) {
+      // Already logged by the export.
+    }
+  }
+
+  @Override
+  public void close() {
+    close(ShutdownConfig.DEFAULT.flushTimeout());
+  }
+}
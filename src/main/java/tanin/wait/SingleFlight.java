@@ -0,0 +1,47 @@
+package tanin.wait;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs at most one call per key at a time. A call made while another one with the same key is in flight waits for it
+ * and shares its result or its exception instead of running again.
+ */
+class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  final AtomicLong sharedCount = new AtomicLong();
+
+  V run(K key, Callable<V> call) throws Exception {
+    var own = new CompletableFuture<V>();
+    var existing = inFlight.putIfAbsent(key, own);
+    if (existing != null) {
+      sharedCount.incrementAndGet();
+      try {
+        return existing.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+
+    try {
+      var result = call.call();
+      own.complete(result);
+      return result;
+    } catch (Throwable e) {
+      own.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  int inFlight() {
+    return inFlight.size();
+  }
+}
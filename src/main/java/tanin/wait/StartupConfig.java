@@ -0,0 +1,15 @@
+package tanin.wait;
+
+/**
+ * Settings of the start of the server.
+ *
+ * @param warmUp whether to load the code paths of a signup in the background once the port is bound, including
+ *               fetching the first access token. Without it, the first signup after a cold start pays for them.
+ */
+public record StartupConfig(
+  boolean warmUp
+) {
+  public static final StartupConfig DEFAULT = new StartupConfig(
+    true
+  );
+}
@@ -0,0 +1,213 @@
+package tanin.wait;
+
+import com.renomad.minum.web.IRequest;
+import com.renomad.minum.web.IResponse;
+import com.renomad.minum.web.Response;
+import com.renomad.minum.web.StatusLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A static file that is read and compressed once, and served from prebuilt variants with an ETag each.
+ */
+public class StaticAsset {
+  static final String CACHE_CONTROL = "public, max-age=300";
+
+  record Variant(String encoding, byte[] body, String etag, Map<String, String> headers, Map<String, String> notModifiedHeaders) {}
+
+  final Variant identity;
+  // Null when compressing doesn't make the file smaller.
+  final Variant gzip;
+  final Variant deflate;
+
+  StaticAsset(byte[] content, String contentType) {
+    var etag = computeEtag(content);
+    identity = buildVariant("identity", content, etag, contentType);
+    // The JDK has no Brotli encoder.
+    gzip = smallerOrNull(buildVariant("gzip", compress(content, true), etag, contentType));
+    deflate = smallerOrNull(buildVariant("deflate", compress(content, false), etag, contentType));
+  }
+
+  public static StaticAsset load(String resourcePath, String contentType) {
+    try (var stream = StaticAsset.class.getResourceAsStream(resourcePath)) {
+      if (stream == null) {
+        throw new RuntimeException("The resource " + resourcePath + " doesn't exist");
+      }
+      return new StaticAsset(stream.readAllBytes(), contentType);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read the resource " + resourcePath, e);
+    }
+  }
+
+  private Variant smallerOrNull(Variant variant) {
+    return variant.body().length < identity.body().length ? variant : null;
+  }
+
+  private static Variant buildVariant(String encoding, byte[] body, String etag, String contentType) {
+    var variantEtag = encoding.equals("identity") ? "\"" + etag + "\"" : "\"" + etag + "-" + encoding + "\"";
+    var notModifiedHeaders = Map.of(
+      "ETag", variantEtag,
+      "Cache-Control", CACHE_CONTROL,
+      "Vary", "Accept-Encoding"
+    );
+    var headers = encoding.equals("identity")
+      ? Map.of("Content-Type", contentType, "ETag", variantEtag, "Cache-Control", CACHE_CONTROL, "Vary", "Accept-Encoding")
+      : Map.of("Content-Type", contentType, "Content-Encoding", encoding, "ETag", variantEtag, "Cache-Control", CACHE_CONTROL, "Vary", "Accept-Encoding");
+    return new Variant(encoding, body, variantEtag, headers, notModifiedHeaders);
+  }
+
+  private static String computeEtag(byte[] content) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256").digest(content);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] compress(byte[] content, boolean gzip) {
+    var bytes = new ByteArrayOutputStream(content.length);
+    try {
+      if (gzip) {
+        try (var out = new BestGzipOutputStream(bytes)) {
+          out.write(content);
+        }
+      } else {
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (var out = new DeflaterOutputStream(bytes, deflater)) {
+          out.write(content);
+        } finally {
+          deflater.end();
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * A gzip stream that compresses at {@link Deflater#BEST_COMPRESSION}. GZIPOutputStream doesn't take a level.
+   */
+  private static class BestGzipOutputStream extends GZIPOutputStream {
+    BestGzipOutputStream(OutputStream out) throws IOException {
+      super(out);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+
+  public IResponse respond(IRequest req) {
+    var variant = select(firstOrNull(req.getHeaders().valueByKey("Accept-Encoding")));
+
+    if (isNotModified(firstOrNull(req.getHeaders().valueByKey("If-None-Match")))) {
+      return Response.buildLeanResponse(StatusLine.StatusCode.CODE_304_NOT_MODIFIED, variant.notModifiedHeaders());
+    }
+
+    return Response.buildResponse(StatusLine.StatusCode.CODE_200_OK, variant.headers(), variant.body());
+  }
+
+  private static String firstOrNull(List<String> values) {
+    return values == null || values.isEmpty() ? null : values.getFirst();
+  }
+
+  /**
+   * Picks gzip, then deflate, then identity, skipping the encodings that the client refuses with `q=0`.
+   */
+  Variant select(String acceptEncoding) {
+    if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+      return identity;
+    }
+    if (gzip != null && accepts(acceptEncoding, "gzip")) {
+      return gzip;
+    }
+    if (deflate != null && accepts(acceptEncoding, "deflate")) {
+      return deflate;
+    }
+    return identity;
+  }
+
+  /**
+   * Whether the `Accept-Encoding` value lists the encoding, or `*`, with a non-zero q-value. It walks the value in
+   * place instead of splitting it.
+   */
+  static boolean accepts(String acceptEncoding, String encoding) {
+    var wildcard = false;
+    var length = acceptEncoding.length();
+    var start = 0;
+
+    while (start < length) {
+      var end = acceptEncoding.indexOf(',', start);
+      if (end < 0) {
+        end = length;
+      }
+
+      var tokenStart = skipSpaces(acceptEncoding, start, end);
+      var tokenEnd = tokenStart;
+      while (tokenEnd < end && acceptEncoding.charAt(tokenEnd) != ';' && acceptEncoding.charAt(tokenEnd) != ' ') {
+        tokenEnd++;
+      }
+      var tokenLength = tokenEnd - tokenStart;
+
+      if (tokenLength == encoding.length() && acceptEncoding.regionMatches(true, tokenStart, encoding, 0, tokenLength)) {
+        return !hasZeroQuality(acceptEncoding, tokenEnd, end);
+      }
+      if (tokenLength == 1 && acceptEncoding.charAt(tokenStart) == '*') {
+        wildcard = !hasZeroQuality(acceptEncoding, tokenEnd, end);
+      }
+
+      start = end + 1;
+    }
+
+    return wildcard;
+  }
+
+  private static int skipSpaces(String value, int start, int end) {
+    while (start < end && value.charAt(start) == ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  // Matches `q=0`, `q=0.0`, `q=0.00` and `q=0.000` in the parameters of one entry.
+  private static boolean hasZeroQuality(String value, int start, int end) {
+    var q = value.indexOf("q=", start);
+    if (q < 0 || q >= end) {
+      return false;
+    }
+    for (int i = q + 2; i < end; i++) {
+      var c = value.charAt(i);
+      if (c != '0' && c != '.' && c != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the `If-None-Match` value contains the ETag of any variant or `*`. The comparison is weak, as RFC 9110
+   * requires for `If-None-Match`.
+   */
+  boolean isNotModified(String ifNoneMatch) {
+    if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+      return false;
+    }
+    if (ifNoneMatch.trim().equals("*")) {
+      return true;
+    }
+    return containsEtag(ifNoneMatch, identity) || containsEtag(ifNoneMatch, gzip) || containsEtag(ifNoneMatch, deflate);
+  }
+
+  private static boolean containsEtag(String ifNoneMatch, Variant variant) {
+    return variant != null && ifNoneMatch.contains(variant.etag());
+  }
+}
@@ -0,0 +1,25 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the local store, which replaces the journal and write-behind.
+ *
+ * @param exportInterval how long the exporter waits between exports. It exports again right away after a full batch.
+ * @param exportBatchSize the max number of rows per export, each sheet getting one append call per export
+ */
+public record StoreConfig(
+  boolean enabled,
+  String directory,
+  long maxSegmentBytes,
+  Duration exportInterval,
+  int exportBatchSize
+) {
+  public static final StoreConfig DEFAULT = new StoreConfig(
+    false,
+    "./store",
+    64 * 1024 * 1024,
+    Duration.ofSeconds(10),
+    5000
+  );
+}
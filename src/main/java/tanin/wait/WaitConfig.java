@@ -0,0 +1,203 @@
+package tanin.wait;
+
+/**
+ * The optional settings of a Wait server. {@link #DEFAULT} holds the value of each setting when its environment variable
+ * isn't set.
+ */
+public record WaitConfig(
+  HttpClientConfig httpClient,
+  WriteBehindConfig writeBehind,
+  JournalConfig journal,
+  RetryConfig retry,
+  CircuitBreakerConfig circuitBreaker,
+  DeduplicationConfig deduplication,
+  RateLimitConfig rateLimit,
+  GoogleEndpointsConfig googleEndpoints,
+  CorsConfig cors,
+  RoutingConfig routing,
+  WriteRequestConfig writeRequest,
+  ServerConfig server,
+  ShutdownConfig shutdown,
+  StartupConfig startup,
+  StoreConfig store,
+  ReadApiConfig readApi,
+  ConcurrencyLimitConfig concurrencyLimit,
+  CsvExportConfig csvExport,
+  WebhookConfig webhook
+) {
+  public static final WaitConfig DEFAULT = new WaitConfig(
+    HttpClientConfig.DEFAULT,
+    WriteBehindConfig.DEFAULT,
+    JournalConfig.DEFAULT,
+    RetryConfig.DEFAULT,
+    CircuitBreakerConfig.DEFAULT,
+    DeduplicationConfig.DEFAULT,
+    RateLimitConfig.DEFAULT,
+    GoogleEndpointsConfig.DEFAULT,
+    CorsConfig.DEFAULT,
+    RoutingConfig.DEFAULT,
+    WriteRequestConfig.DEFAULT,
+    ServerConfig.DEFAULT,
+    ShutdownConfig.DEFAULT,
+    StartupConfig.DEFAULT,
+    StoreConfig.DEFAULT,
+    ReadApiConfig.DEFAULT,
+    ConcurrencyLimitConfig.DEFAULT,
+    CsvExportConfig.DEFAULT,
+    WebhookConfig.DEFAULT
+  );
+
+  /**
+   * Starts from the defaults, e.g. {@code WaitConfig.builder().journal(journal).build()}.
+   */
+  public static Builder builder() {
+    return DEFAULT.toBuilder();
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  public static class Builder {
+    private HttpClientConfig httpClient;
+    private WriteBehindConfig writeBehind;
+    private JournalConfig journal;
+    private RetryConfig retry;
+    private CircuitBreakerConfig circuitBreaker;
+    private DeduplicationConfig deduplication;
+    private RateLimitConfig rateLimit;
+    private GoogleEndpointsConfig googleEndpoints;
+    private CorsConfig cors;
+    private RoutingConfig routing;
+    private WriteRequestConfig writeRequest;
+    private ServerConfig server;
+    private ShutdownConfig shutdown;
+    private StartupConfig startup;
+    private StoreConfig store;
+    private ReadApiConfig readApi;
+    private ConcurrencyLimitConfig concurrencyLimit;
+    private CsvExportConfig csvExport;
+    private WebhookConfig webhook;
+
+    private Builder(WaitConfig config) {
+      httpClient = config.httpClient();
+      writeBehind = config.writeBehind();
+      journal = config.journal();
+      retry = config.retry();
+      circuitBreaker = config.circuitBreaker();
+      deduplication = config.deduplication();
+      rateLimit = config.rateLimit();
+      googleEndpoints = config.googleEndpoints();
+      cors = config.cors();
+      routing = config.routing();
+      writeRequest = config.writeRequest();
+      server = config.server();
+      shutdown = config.shutdown();
+      startup = config.startup();
+      store = config.store();
+      readApi = config.readApi();
+      concurrencyLimit = config.concurrencyLimit();
+      csvExport = config.csvExport();
+      webhook = config.webhook();
+    }
+
+    public Builder httpClient(HttpClientConfig httpClient) {
+      this.httpClient = httpClient;
+      return this;
+    }
+
+    public Builder writeBehind(WriteBehindConfig writeBehind) {
+      this.writeBehind = writeBehind;
+      return this;
+    }
+
+    public Builder journal(JournalConfig journal) {
+      this.journal = journal;
+      return this;
+    }
+
+    public Builder retry(RetryConfig retry) {
+      this.retry = retry;
+      return this;
+    }
+
+    public Builder circuitBreaker(CircuitBreakerConfig circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+      return this;
+    }
+
+    public Builder deduplication(DeduplicationConfig deduplication) {
+      this.deduplication = deduplication;
+      return this;
+    }
+
+    public Builder rateLimit(RateLimitConfig rateLimit) {
+      this.rateLimit = rateLimit;
+      return this;
+    }
+
+    public Builder googleEndpoints(GoogleEndpointsConfig googleEndpoints) {
+      this.googleEndpoints = googleEndpoints;
+      return this;
+    }
+
+    public Builder cors(CorsConfig cors) {
+      this.cors = cors;
+      return this;
+    }
+
+    public Builder routing(RoutingConfig routing) {
+      this.routing = routing;
+      return this;
+    }
+
+    public Builder writeRequest(WriteRequestConfig writeRequest) {
+      this.writeRequest = writeRequest;
+      return this;
+    }
+
+    public Builder server(ServerConfig server) {
+      this.server = server;
+      return this;
+    }
+
+    public Builder shutdown(ShutdownConfig shutdown) {
+      this.shutdown = shutdown;
+      return this;
+    }
+
+    public Builder startup(StartupConfig startup) {
+      this.startup = startup;
+      return this;
+    }
+
+    public Builder store(StoreConfig store) {
+      this.store = store;
+      return this;
+    }
+
+    public Builder readApi(ReadApiConfig readApi) {
+      this.readApi = readApi;
+      return this;
+    }
+
+    public Builder concurrencyLimit(ConcurrencyLimitConfig concurrencyLimit) {
+      this.concurrencyLimit = concurrencyLimit;
+      return this;
+    }
+
+    public Builder csvExport(CsvExportConfig csvExport) {
+      this.csvExport = csvExport;
+      return this;
+    }
+
+    public Builder webhook(WebhookConfig webhook) {
+      this.webhook = webhook;
+      return this;
+    }
+
+    public WaitConfig build() {
+      return new WaitConfig(httpClient, writeBehind, journal, retry, circuitBreaker, deduplication, rateLimit, googleEndpoints, cors, routing, writeRequest, server, shutdown, startup, store, readApi, concurrencyLimit, csvExport, webhook);
+    }
+  }
+}
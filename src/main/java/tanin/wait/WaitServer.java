@@ -4,8 +4,18 @@ import com.eclipsesource.json.Json;
 import com.renomad.minum.web.*;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -24,12 +34,67 @@ public class WaitServer {
     }
   }
 
+  private static final byte[] WARM_UP_BODY = "{\"email\":\"warm-up@example.com\",\"group\":\"warm-up\"}".getBytes(StandardCharsets.UTF_8);
+
   int port;
   public FullSystem minum;
 
-  GoogleSheetService googleSheetService;
-  String sheetId;
-  String sheetName;
+  WaitConfig config;
+  // The HttpClient and the access tokens shared by the sheets. The webhook export uses the same client.
+  final GoogleApiClients googleClients;
+  final SignupPipeline pipeline;
+  RateLimiter ipRateLimiter;
+  // Null when the number of concurrent requests is unbounded.
+  Semaphore requestPermits;
+  Metrics.Counter shedRequests;
+  final Metrics metrics;
+  final CorsPolicy cors;
+  StaticAsset indexPage;
+  final RequestLog requestLog = RequestLog.fromLogManager();
+  // Counts every request between the pre-handler and its response.
+  final AtomicInteger inFlightRequests = new AtomicInteger();
+  volatile boolean draining = false;
+  // Signalled when the last request in flight finishes while draining.
+  private final ReentrantLock drainLock = new ReentrantLock();
+  private final Condition drained = drainLock.newCondition();
+  ShutdownReport shutdownReport;
+  EnumMap<RequestLine.Method, Map<String, RouteMetrics>> routeMetrics;
+  RouteMetrics otherRouteMetrics;
+
+  /**
+   * The latency and the response statuses of one endpoint. The counter of each status is created on first use.
+   */
+  static class RouteMetrics {
+    private final Metrics metrics;
+    private final String method;
+    private final String path;
+    final Metrics.Histogram latency;
+    private final Metrics.Counter[] responses = new Metrics.Counter[600];
+
+    RouteMetrics(Metrics metrics, String method, String path) {
+      this.metrics = metrics;
+      this.method = method;
+      this.path = path;
+      this.latency = metrics.histogram(
+        "wait_http_request_duration_seconds",
+        "The time to handle a request, from routing to the response being built",
+        "method", method,
+        "path", path
+      );
+    }
+
+    void record(int status, long startNanos) {
+      latency.recordSince(startNanos);
+      var index = status >= 0 && status < responses.length ? status : 0;
+      var counter = responses[index];
+      if (counter == null) {
+        // Racing threads get the same counter from the registry.
+        counter = metrics.counter("wait_http_requests_total", "The handled requests by the response status", "method", method, "path", path, "status", "" + status);
+        responses[index] = counter;
+      }
+      counter.increment();
+    }
+  }
 
 
   public WaitServer(
@@ -37,97 +102,516 @@ public class WaitServer {
     String serviceAccountKeyJson,
     String sheetId,
     String sheetName
+  ) {
+    this(port, serviceAccountKeyJson, sheetId, sheetName, WaitConfig.DEFAULT);
+  }
+
+  public WaitServer(
+    int port,
+    String serviceAccountKeyJson,
+    String sheetId,
+    String sheetName,
+    WaitConfig config
+  ) {
+    this(port, serviceAccountKeyJson, sheetId, sheetName, config, new Metrics());
+  }
+
+  private WaitServer(
+    int port,
+    String serviceAccountKeyJson,
+    String sheetId,
+    String sheetName,
+    WaitConfig config,
+    Metrics metrics
+  ) {
+    this(port, (SignupSink) null, config, metrics);
+    pipeline.sink = buildGoogleSheetSink(googleClients, serviceAccountKeyJson, sheetId, sheetName, config, metrics.withLabels("destination", "default"));
+    pipeline.destinationSinkFactory = destination -> buildGoogleSheetSink(
+      googleClients,
+      destination.serviceAccountKeyJson() == null ? serviceAccountKeyJson : destination.serviceAccountKeyJson(),
+      destination.sheetId(),
+      destination.sheetName(),
+      config,
+      metrics.withLabels("destination", destination.name())
+    );
+  }
+
+  public WaitServer(
+    int port,
+    SignupSink sink,
+    WaitConfig config
+  ) {
+    this(port, sink, config, new Metrics());
+  }
+
+  /**
+   * @param metrics the registry served at `GET /metrics`. The sink may record into it too.
+   */
+  public WaitServer(
+    int port,
+    SignupSink sink,
+    WaitConfig config,
+    Metrics metrics
   ) {
     this.port = port;
+    this.config = config;
+    this.metrics = metrics;
+    this.cors = new CorsPolicy(config.cors());
+    this.googleClients = new GoogleApiClients(config, metrics);
+    this.pipeline = new SignupPipeline(
+      sink,
+      destination -> {
+        if (destination.serviceAccountKeyJson() == null) {
+          throw new IllegalArgumentException("The destination " + destination.name() + " needs a serviceAccountKeyFile");
+        }
+        return buildGoogleSheetSink(googleClients, destination.serviceAccountKeyJson(), destination.sheetId(), destination.sheetName(), config, metrics.withLabels("destination", destination.name()));
+      },
+      config,
+      metrics,
+      googleClients
+    );
+  }
+
+  static GoogleSheetSink buildGoogleSheetSink(
+    GoogleApiClients googleClients,
+    String serviceAccountKeyJson,
+    String sheetId,
+    String sheetName,
+    WaitConfig config,
+    Metrics metrics
+  ) {
     var keyJson = Json.parse(serviceAccountKeyJson).asObject();
-    googleSheetService = new GoogleSheetService(
+    var service = googleClients.service(
       keyJson.get("client_email").asString(),
-      keyJson.get("private_key").asString()
+      keyJson.get("private_key").asString(),
+      metrics
     );
-    this.sheetId = sheetId;
-    this.sheetName = sheetName;
+    return new GoogleSheetSink(service, sheetId, sheetName, config.deduplication().warmPageSize());
   }
 
-  Map<String, String> addCorsHeaders(Map<String, String> headers, IRequest req) {
+  RouteMetrics getRouteMetrics(RequestLine.Method method, String path) {
+    var byPath = routeMetrics.get(method);
+    var route = byPath == null ? null : byPath.get(path);
+    return route == null ? otherRouteMetrics : route;
+  }
+
+  void registerMetrics() {
+    routeMetrics = new EnumMap<>(RequestLine.Method.class);
+    for (var route : List.of(Map.entry(GET, ""), Map.entry(OPTIONS, "write"), Map.entry(POST, "write"), Map.entry(GET, "healthcheck"), Map.entry(GET, "metrics"), Map.entry(GET, "stats"), Map.entry(GET, "position"))) {
+      routeMetrics.computeIfAbsent(route.getKey(), k -> new HashMap<>())
+        .put(route.getValue(), new RouteMetrics(metrics, route.getKey().name(), route.getValue()));
+    }
+    // Unknown paths share one series so that scanners can't blow up the number of series.
+    otherRouteMetrics = new RouteMetrics(metrics, "other", "other");
+
+    if (requestPermits != null) {
+      var maxConcurrentRequests = config.server().maxConcurrentRequests();
+      metrics.gauge("wait_requests_in_flight", "The number of requests being handled", () -> maxConcurrentRequests - requestPermits.availablePermits());
+      shedRequests = metrics.counter("wait_requests_shed_total", "The requests answered with 503 because too many were being handled");
+    }
+    if (ipRateLimiter != null) {
+      metrics.gauge("wait_rate_limit_buckets", "The number of tracked rate limit buckets", () -> ipRateLimiter.size(), "key", "ip");
+    }
+  }
+
+  // Shedding the healthcheck would get a busy server restarted, and the metrics are needed the most under load.
+  static boolean isExemptFromShedding(IRequest request) {
+    return isMetricsRequest(request) || (request.getRequestLine().getMethod() == GET && request.getRequestLine().getPathDetails().getIsolatedPath().equals("healthcheck"));
+  }
+
+  // A position lookup is limited like a signup, so that the waitlist can't be enumerated quickly.
+  static boolean isRateLimited(IRequest request) {
+    var method = request.getRequestLine().getMethod();
+    var path = request.getRequestLine().getPathDetails().getIsolatedPath();
+    return (method == POST && path.equals("write")) || (method == GET && path.equals("position"));
+  }
+
+  static boolean isMetricsRequest(IRequest request) {
+    return request.getRequestLine().getMethod() == GET && request.getRequestLine().getPathDetails().getIsolatedPath().equals("metrics");
+  }
+
+  static String getOrigin(IRequest req) {
     var origin = req.getHeaders().valueByKey("Origin");
-    var corsHeaders = Map.of(
-        "Access-Control-Allow-Origin", origin == null || origin.isEmpty() ? "*" : origin.getFirst(),
-        "Access-Control-Allow-Methods", "POST",
-        "Access-Control-Allow-Headers", "*",
-        "Vary", "Origin"
+    return origin == null || origin.isEmpty() ? null : origin.getFirst();
+  }
+
+  Map<String, String> jsonHeaders(IRequest req) {
+    return cors.headersFor(getOrigin(req)).json();
+  }
+
+  Map<String, String> addCorsHeaders(Map<String, String> headers, IRequest req) {
+    return cors.addTo(headers, getOrigin(req));
+  }
+
+  IResponse errorResponse(IRequest req, StatusLine.StatusCode status, String error) {
+    return Response.buildResponse(
+      status,
+      jsonHeaders(req),
+      Json.object()
+        .add("error", error)
+        .toString()
+    );
+  }
+
+  /**
+   * Rejects a `POST /write` by its headers, before its body is read: 403 when its `Origin` isn't allowed, 415 unless it
+   * is JSON, and 413 when its `Content-Length` is over the cap. Returns null when the body may be read.
+   *
+   * The connection is closed after a rejection, since the unread body is still on it.
+   */
+  IResponse checkWriteHeaders(IRequest req) {
+    if (cors.refuses(getOrigin(req))) {
+      return rejectUnreadBody(req, StatusLine.StatusCode.CODE_403_FORBIDDEN, "The origin is not allowed.");
+    }
+
+    var contentTypes = req.getHeaders().valueByKey("Content-Type");
+    var contentType = contentTypes == null || contentTypes.isEmpty() ? "" : contentTypes.getFirst();
+    // A body without a Content-Type is parsed as JSON, as older versions did, and rejected with 400 if it isn't.
+    if (!contentType.isBlank() && !isJson(contentType)) {
+      return rejectUnreadBody(req, StatusLine.StatusCode.CODE_415_UNSUPPORTED_MEDIA_TYPE, "The body must be JSON with Content-Type: application/json.");
+    }
+
+    var contentLengths = req.getHeaders().valueByKey("Content-Length");
+    if (contentLengths == null || contentLengths.isEmpty()) {
+      return null;
+    }
+    long contentLength;
+    try {
+      contentLength = Long.parseLong(contentLengths.getFirst().trim());
+    } catch (NumberFormatException e) {
+      return rejectUnreadBody(req, StatusLine.StatusCode.CODE_400_BAD_REQUEST, "The Content-Length is invalid.");
+    }
+    if (contentLength > config.writeRequest().maxBodyBytes()) {
+      return rejectUnreadBody(req, StatusLine.StatusCode.CODE_413_PAYLOAD_TOO_LARGE, "The request is too large.");
+    }
+    return null;
+  }
+
+  // Parameters such as `charset=utf-8` are ignored. The body is always decoded as UTF-8.
+  static boolean isJson(String contentType) {
+    var semicolon = contentType.indexOf(';');
+    var mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+    return mediaType.equalsIgnoreCase("application/json");
+  }
+
+  private IResponse rejectUnreadBody(IRequest req, StatusLine.StatusCode status, String error) {
+    var headers = new HashMap<>(jsonHeaders(req));
+    headers.put("Connection", "close");
+    return Response.buildResponse(status, headers, Json.object().add("error", error).toString());
+  }
+
+  IResponse okResponse(IRequest req) {
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_200_OK,
+      jsonHeaders(req),
+      Json.object().toString()
+    );
+  }
+
+  IResponse acceptedResponse(IRequest req) {
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_202_ACCEPTED,
+      jsonHeaders(req),
+      Json.object().toString()
+    );
+  }
+
+  IResponse tooManyRequestsResponse(IRequest req, Duration retryAfter) {
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_429_TOO_MANY_REQUESTS,
+      addCorsHeaders(Map.of("Content-Type", "application/json", "Retry-After", "" + Math.max(1, (retryAfter.toMillis() + 999) / 1000)), req),
+      Json.object()
+        .add("error", "Too many requests. Please try again later.")
+        .toString()
+    );
+  }
+
+  String getClientIp(IRequest req) {
+    if (config.rateLimit().trustForwardedFor()) {
+      var forwardedFor = req.getHeaders().valueByKey("X-Forwarded-For");
+      if (forwardedFor != null && !forwardedFor.isEmpty() && !forwardedFor.getFirst().isBlank()) {
+        return forwardedFor.getFirst().split(",")[0].trim();
+      }
+    }
+    return req.getRemoteRequester();
+  }
+
+  IResponse busyResponse(IRequest req) {
+    return busyResponse(req, Duration.ofSeconds(1));
+  }
+
+  IResponse busyResponse(IRequest req, Duration retryAfter) {
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE,
+      addCorsHeaders(Map.of("Content-Type", "application/json", "Retry-After", "" + Math.max(1, retryAfter.toSeconds())), req),
+      Json.object()
+        .add("error", "The server is busy. Please try again.")
+        .toString()
+    );
+  }
+
+  /**
+   * Returns an error response when the request doesn't carry the read API token, or null when it may be served.
+   */
+  IResponse authorizeRead(IRequest req) {
+    var token = config.readApi().token();
+    if (token.isEmpty()) {
+      // A position reveals whether an email has signed up, so the endpoints don't exist without a token.
+      return errorResponse(req, StatusLine.StatusCode.CODE_404_NOT_FOUND, "The read API is disabled. Set READ_API_TOKEN to enable it.");
+    }
+
+    var authorization = req.getHeaders().valueByKey("Authorization");
+    if (authorization != null && !authorization.isEmpty() && MessageDigest.isEqual(
+      authorization.getFirst().getBytes(StandardCharsets.UTF_8),
+      ("Bearer " + token).getBytes(StandardCharsets.UTF_8)
+    )) {
+      return null;
+    }
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_401_UNAUTHORIZED,
+      addCorsHeaders(Map.of("Content-Type", "application/json", "WWW-Authenticate", "Bearer"), req),
+      Json.object().add("error", "The token is missing or invalid.").toString()
+    );
+  }
+
+  /**
+   * The counts of signups per group, from the index. Signups without a group are counted under the empty string.
+   */
+  IResponse statsResponse(IRequest req) throws IOException {
+    var json = Json.object().add("ready", !pipeline.signupIndex.isLoading());
+
+    var total = 0L;
+    var groups = Json.object();
+    for (var entry : pipeline.signupIndex.sizeByGroup().entrySet()) {
+      groups.add(entry.getKey(), entry.getValue());
+      total += entry.getValue();
+    }
+    json.add("signups", total).add("groups", groups).add("indexBytes", pipeline.signupIndex.memoryBytes());
+
+    if (pipeline.store != null) {
+      var stats = pipeline.store.stats();
+      json.add("store", Json.object()
+        .add("exported", stats.exported())
+        .add("pendingExport", stats.pendingExport())
+        .add("logBytes", stats.logBytes())
+        .add("lastExportAt", stats.lastExportAt() == null ? null : stats.lastExportAt().toString()));
+    }
+
+    return Response.buildResponse(StatusLine.StatusCode.CODE_200_OK, jsonHeaders(req), json.toString());
+  }
+
+  /**
+   * The position of `email` in `group`, or in the signups without a group when `group` is missing.
+   */
+  IResponse positionResponse(IRequest req) {
+    var query = req.getRequestLine().getPathDetails().getQueryString();
+    var email = query.get("email");
+    var group = query.get("group");
+    if (email == null || !WriteRequestParser.isValidEmail(email.trim())) {
+      return errorResponse(req, StatusLine.StatusCode.CODE_400_BAD_REQUEST, "The email is invalid.");
+    }
+    group = group == null || group.isBlank() ? null : group.trim();
+
+    var position = pipeline.signupIndex.position(group, email);
+    if (position == 0) {
+      if (pipeline.signupIndex.isLoading()) {
+        // The email may be in the part of the sheet that isn't loaded yet.
+        return Response.buildResponse(
+          StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE,
+          addCorsHeaders(Map.of("Content-Type", "application/json", "Retry-After", "1"), req),
+          Json.object().add("error", "The waitlist is still loading. Please try again.").toString()
+        );
+      }
+      return errorResponse(req, StatusLine.StatusCode.CODE_404_NOT_FOUND, "The email is not on the waitlist.");
+    }
+
+    return Response.buildResponse(
+      StatusLine.StatusCode.CODE_200_OK,
+      jsonHeaders(req),
+      Json.object()
+        .add("position", position)
+        .add("signups", pipeline.signupIndex.size(group))
+        .toString()
     );
+  }
 
-    return new java.util.HashMap<>(headers) {{
-      putAll(corsHeaders);
-    }};
+  /**
+   * Runs what the first signup would otherwise pay for after a cold start: the parser, the metrics, and the sink's
+   * first call to Google with its class loading, key parsing and TLS handshake.
+   */
+  void warmUp() {
+    var startTime = System.currentTimeMillis();
+    try {
+      WriteRequestParser.parse(WARM_UP_BODY, config.writeRequest().maxFieldLength());
+      metrics.render();
+      pipeline.sink.warmUp();
+      logger.info("Warmed up in " + (System.currentTimeMillis() - startTime) + "ms");
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Unable to warm up. The first signup will be slower.", e);
+    }
   }
 
   public void start() {
-    minum = MinumBuilder.build(port);
+    pipeline.start();
+
+    if (config.rateLimit().enabled()) {
+      var rateLimit = config.rateLimit();
+      ipRateLimiter = new RateLimiter("IP", rateLimit.perIpRatePerSecond(), rateLimit.perIpBurst(), rateLimit.maxBuckets(), rateLimit.idleSweepInterval());
+    }
+
+    if (config.server().maxConcurrentRequests() > 0) {
+      requestPermits = new Semaphore(config.server().maxConcurrentRequests());
+    }
+
+    indexPage = StaticAsset.load("/html/index.html", "text/html; charset=UTF-8");
+    registerMetrics();
+
+    minum = MinumBuilder.build(port, config.server(), this::stop);
     var wf = minum.getWebFramework();
 
     wf.registerPreHandler((inputs) -> {
+      var startNanos = System.nanoTime();
       var request = inputs.clientRequest();
+      var route = getRouteMetrics(request.getRequestLine().getMethod(), request.getRequestLine().getPathDetails().getIsolatedPath());
+      var permitted = false;
+      inFlightRequests.incrementAndGet();
       try {
-        var response = inputs.endpoint().apply(inputs.clientRequest());
-        logger.info(request.getRequestLine().getMethod() + " " + request.getRequestLine().getPathDetails().getIsolatedPath() + " " + response.getStatusCode());
+        IResponse response = null;
+        if (draining && !isMetricsRequest(request)) {
+          // Tells the load balancer to stop sending requests here.
+          response = Response.buildResponse(
+            StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE,
+            addCorsHeaders(Map.of("Content-Type", "application/json", "Retry-After", "1", "Connection", "close"), request),
+            Json.object().add("error", "The server is shutting down. Please try again.").toString()
+          );
+        }
+        if (response == null && requestPermits != null && !isExemptFromShedding(request)) {
+          permitted = requestPermits.tryAcquire();
+          if (!permitted) {
+            shedRequests.increment();
+            response = busyResponse(request);
+          }
+        }
+        if (response == null && ipRateLimiter != null && isRateLimited(request)) {
+          var retryAfter = ipRateLimiter.tryAcquire(getClientIp(request));
+          if (retryAfter != null) {
+            response = tooManyRequestsResponse(request, retryAfter);
+          }
+        }
+        if (response == null) {
+          response = inputs.endpoint().apply(inputs.clientRequest());
+        }
+        route.record(response.getStatusCode().code, startNanos);
+        requestLog.log(request.getRequestLine().getMethod().name(), request.getRequestLine().getPathDetails().getIsolatedPath(), response.getStatusCode());
         return response;
       } catch (Exception e) {
+        route.record(500, startNanos);
         logger.log(Level.SEVERE, request.getRequestLine().getMethod() + " " + request.getRequestLine().getPathDetails().getIsolatedPath() + " raised an exception", e);
         throw e;
+      } finally {
+        if (permitted) {
+          requestPermits.release();
+        }
+        if (inFlightRequests.decrementAndGet() == 0 && draining) {
+          drainLock.lock();
+          try {
+            drained.signalAll();
+          } finally {
+            drainLock.unlock();
+          }
+        }
       }
     });
 
     wf.registerPath(
       GET,
       "",
-      r -> {
-        String content = new String(Main.class.getResourceAsStream("/html/index.html").readAllBytes());
-        return Response.htmlOk(content);
-      }
+      indexPage::respond
     );
 
     wf.registerPath(
       OPTIONS,
       "write",
-      req -> {
-        var origin = req.getHeaders().valueByKey("Origin");
-        return Response.buildResponse(
-          StatusLine.StatusCode.CODE_200_OK,
-          addCorsHeaders(Map.of(), req),
-          ""
-        );
-      }
+      req -> Response.buildResponse(
+        StatusLine.StatusCode.CODE_200_OK,
+        cors.headersFor(getOrigin(req)).preflight(),
+        ""
+      )
     );
 
     wf.registerPath(
       POST,
       "write",
       req -> {
-        var json = Json.parse(req.getBody().asString()).asObject();
-        var email = Helpers.getStringOrNull(json, "email");
-        var group = Helpers.getStringOrNull(json, "group");
-
-        if (email != null) { email = email.trim(); }
-        if (group != null) { group = group.trim(); }
-
-        if (email == null || email.isBlank() || !email.contains("@")) {
-          return Response.buildResponse(
-            StatusLine.StatusCode.CODE_400_BAD_REQUEST,
-            addCorsHeaders(Map.of("Content-Type", "application/json"), req),
-            Json.object()
-              .add("error", "The email is invalid.")
-              .toString()
-          );
+        var rejected = checkWriteHeaders(req);
+        if (rejected != null) {
+          return rejected;
         }
 
-        googleSheetService.write(sheetId, sheetName, email, group);
+        // Parsed from Minum's byte array as it is. A chunked body has no Content-Length, so its size is checked here.
+        var body = req.getBody().asBytes();
+        if (body.length > config.writeRequest().maxBodyBytes()) {
+          return errorResponse(req, StatusLine.StatusCode.CODE_413_PAYLOAD_TOO_LARGE, "The request is too large.");
+        }
 
-        return Response.buildResponse(
-          StatusLine.StatusCode.CODE_200_OK,
-          addCorsHeaders(Map.of("Content-Type", "application/json"), req),
-          Json.object().toString()
-        );
+        Signup signup;
+        try {
+          signup = WriteRequestParser.parse(body, config.writeRequest().maxFieldLength());
+        } catch (WriteRequestParser.InvalidRequestException e) {
+          return errorResponse(req, StatusLine.StatusCode.CODE_400_BAD_REQUEST, e.getMessage());
+        }
+
+        if (signup == null) {
+          return errorResponse(req, StatusLine.StatusCode.CODE_400_BAD_REQUEST, "The email is invalid.");
+        }
+
+        var result = pipeline.write(signup, getOrigin(req));
+        return switch (result.outcome()) {
+          case WRITTEN, DUPLICATE -> okResponse(req);
+          case ACCEPTED -> acceptedResponse(req);
+          case BUSY -> busyResponse(req, result.retryAfter());
+          case RATE_LIMITED -> tooManyRequestsResponse(req, result.retryAfter());
+        };
+      }
+    );
+
+    wf.registerPath(
+      GET,
+      "metrics",
+      req -> Response.buildResponse(
+        StatusLine.StatusCode.CODE_200_OK,
+        Map.of("Content-Type", "text/plain; version=0.0.4; charset=utf-8"),
+        metrics.render()
+      )
+    );
+
+    wf.registerPath(
+      GET,
+      "stats",
+      req -> {
+        var unauthorized = authorizeRead(req);
+        if (unauthorized != null) {
+          return unauthorized;
+        }
+        if (pipeline.signupIndex == null) {
+          return errorResponse(req, StatusLine.StatusCode.CODE_404_NOT_FOUND, "The signup index is disabled.");
+        }
+        return statsResponse(req);
+      }
+    );
+
+    wf.registerPath(
+      GET,
+      "position",
+      req -> {
+        var unauthorized = authorizeRead(req);
+        if (unauthorized != null) {
+          return unauthorized;
+        }
+        if (pipeline.signupIndex == null) {
+          return errorResponse(req, StatusLine.StatusCode.CODE_404_NOT_FOUND, "The signup index is disabled.");
+        }
+        return positionResponse(req);
       }
     );
 
@@ -138,11 +622,61 @@ public class WaitServer {
         return Response.buildResponse(StatusLine.StatusCode.CODE_200_OK, Map.of("Content-Type", "text/plain"), "OK EWJF");
       }
     );
+
+    if (config.startup().warmUp()) {
+      // The port is already bound, so the warm-up doesn't delay the first response.
+      Thread.ofVirtual().name("startup-warmer").start(this::warmUp);
+    }
   }
 
-  public void stop() {
+  /**
+   * Shuts down in order: new requests get 503 while the ones in flight finish, then the server stops, then the queued
+   * signups are written. Each step is bounded by the shutdown config. Calling it again waits for the first call and
+   * returns its report.
+   */
+  public synchronized ShutdownReport stop() {
+    if (shutdownReport != null) {
+      return shutdownReport;
+    }
+
+    var shutdown = config.shutdown();
+    var requests = drain(shutdown.drainTimeout());
     if (minum != null) {
       minum.shutdown();
     }
+    var signups = pipeline.close(shutdown.flushTimeout());
+    // After every sheet's sink, which use it.
+    googleClients.close();
+
+    shutdownReport = requests.plus(signups);
+    logger.info(
+      "Shut down. Requests: " + shutdownReport.requestsDrained() + " drained, " + shutdownReport.requestsCut() + " cut off. " +
+        "Queued signups: " + shutdownReport.signupsFlushed() + " written, " + shutdownReport.signupsFailed() + " failed, " +
+        shutdownReport.signupsLeft() + " left" + (pipeline.isDurable() ? " on disk for the next start." : " and lost.")
+    );
+    return shutdownReport;
+  }
+
+  private ShutdownReport drain(Duration timeout) {
+    draining = true;
+    var inFlight = inFlightRequests.get();
+    if (inFlight > 0) {
+      logger.info("Draining " + inFlight + " request(s) in flight");
+    }
+
+    var remainingNanos = timeout.toNanos();
+    drainLock.lock();
+    try {
+      while (inFlightRequests.get() > 0 && remainingNanos > 0) {
+        remainingNanos = drained.awaitNanos(remainingNanos);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      drainLock.unlock();
+    }
+
+    var cut = inFlightRequests.get();
+    return new ShutdownReport(Math.max(0, inFlight - cut), cut, 0, 0, 0);
   }
 }
@@ -0,0 +1,33 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the webhook export, which is on when {@code url} is set.
+ *
+ * @param timeout the timeout of each post
+ * @param capacity the max number of signups waiting to be posted. The copies of more signups are dropped.
+ */
+public record WebhookConfig(
+  String url,
+  Duration timeout,
+  int capacity,
+  int maxBatchSize,
+  Duration flushInterval
+) {
+  public static final WebhookConfig DEFAULT = new WebhookConfig(
+    "",
+    Duration.ofSeconds(10),
+    10000,
+    100,
+    Duration.ofSeconds(1)
+  );
+
+  boolean enabled() {
+    return !url.isEmpty();
+  }
+
+  WriteBehindConfig queue() {
+    return new WriteBehindConfig(true, capacity, maxBatchSize, flushInterval, Duration.ZERO);
+  }
+}
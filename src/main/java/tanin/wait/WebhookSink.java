@@ -0,0 +1,128 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Posts signups to a URL as one JSON body per batch, retrying a 429, a 5xx or an I/O error with {@link RetryPolicy}.
+ */
+public class WebhookSink implements SignupSink {
+  private static final Logger logger = Logger.getLogger(WebhookSink.class.getName());
+
+  private final URI url;
+  private final Duration timeout;
+  private final RetryPolicy retryPolicy;
+  private final HttpClient client;
+
+  /**
+   * @param client shared with the other outgoing calls, and closed by its owner
+   */
+  public WebhookSink(URI url, Duration timeout, RetryPolicy retryPolicy, HttpClient client) {
+    this.url = url;
+    this.timeout = timeout;
+    this.retryPolicy = retryPolicy;
+    this.client = client;
+  }
+
+  @Override
+  public void write(List<Signup> signups) throws Exception {
+    var future = writeAsync(signups);
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> writeAsync(List<Signup> signups) {
+    var array = Json.array();
+    for (var signup : signups) {
+      array.add(Json.object()
+        .add("email", signup.email())
+        .add("group", signup.group())
+        .add("createdAt", signup.createdAt().toString()));
+    }
+    var request = HttpRequest.newBuilder(url)
+      .timeout(timeout)
+      .header("Content-Type", "application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("signups", array).toString()))
+      .build();
+
+    var result = new CompletableFuture<Void>();
+    attempt(request, signups.size(), 1, result);
+    return result;
+  }
+
+  private void attempt(HttpRequest request, int count, int attempt, CompletableFuture<Void> result) {
+    if (result.isDone()) {
+      // Cancelled while waiting for the retry.
+      return;
+    }
+
+    var inFlight = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+    result.whenComplete((response, error) -> {
+      if (error != null) {
+        inFlight.cancel(true);
+      }
+    });
+
+    inFlight.whenComplete((response, error) -> {
+      IOException failure;
+      Duration retryAfter = null;
+
+      if (error != null) {
+        var cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+          return;
+        }
+        if (!(cause instanceof IOException e)) {
+          result.completeExceptionally(cause);
+          return;
+        }
+        failure = e;
+      } else {
+        var status = response.statusCode();
+        if (status >= 200 && status < 300) {
+          result.complete(null);
+          return;
+        }
+        failure = new IOException("The webhook returned " + status);
+        // Other statuses won't change on a retry.
+        if (status != 429 && status < 500) {
+          result.completeExceptionally(failure);
+          return;
+        }
+        retryAfter = RetryPolicy.parseRetryAfter(response.headers());
+      }
+
+      var backoff = attempt < retryPolicy.maxAttempts() ? retryPolicy.backoff(attempt, retryAfter) : null;
+      if (backoff == null) {
+        result.completeExceptionally(failure);
+        return;
+      }
+      logger.warning("Attempt " + attempt + " to post " + count + " signup(s) to the webhook failed. Retrying in " + backoff.toMillis() + "ms: " + failure.getMessage());
+      CompletableFuture.delayedExecutor(backoff.toMillis(), TimeUnit.MILLISECONDS)
+        .execute(() -> attempt(request, count, attempt + 1, result));
+    });
+  }
+}
@@ -0,0 +1,25 @@
+package tanin.wait;
+
+import java.time.Duration;
+
+/**
+ * Settings of the write-behind queue, which answers `POST /write` with 202 and appends the queued rows in batches.
+ *
+ * @param capacity the max number of signups waiting to be flushed
+ * @param enqueueTimeout how long a request waits for room in a full queue before it is rejected with 503
+ */
+public record WriteBehindConfig(
+  boolean enabled,
+  int capacity,
+  int maxBatchSize,
+  Duration flushInterval,
+  Duration enqueueTimeout
+) {
+  public static final WriteBehindConfig DEFAULT = new WriteBehindConfig(
+    false,
+    10000,
+    500,
+    Duration.ofSeconds(1),
+    Duration.ofMillis(100)
+  );
+}
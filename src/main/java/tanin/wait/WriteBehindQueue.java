@@ -0,0 +1,204 @@
+package tanin.wait;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded queue of signups with a single flusher that combines queued rows into one append call.
+ *
+ * @param <T> a signup or a journal entry that carries one
+ */
+public class WriteBehindQueue<T> implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(WriteBehindQueue.class.getName());
+
+  @FunctionalInterface
+  public interface Flusher<T> {
+    void flush(List<T> batch) throws Exception;
+  }
+
+  private static final long POLL_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final WriteBehindConfig config;
+  private final Flusher<T> flusher;
+  private final BlockingQueue<T> queue;
+  // One permit per free slot. It is taken before an item is added and given back when the flusher takes the item.
+  private final Semaphore room;
+  private final Thread thread;
+
+  private volatile boolean closed = false;
+  // Set when close() gives up, so that the flusher stops instead of writing to a sink that is being closed.
+  private volatile boolean abandoned = false;
+  private volatile int flushing = 0;
+  final AtomicLong flushedCount = new AtomicLong();
+  final AtomicLong failedCount = new AtomicLong();
+
+  public WriteBehindQueue(WriteBehindConfig config, Flusher<T> flusher) {
+    this.config = config;
+    this.flusher = flusher;
+    this.queue = new ArrayBlockingQueue<>(config.capacity());
+    this.room = new Semaphore(config.capacity());
+    this.thread = Thread.ofVirtual().name("write-behind-flusher").start(this::run);
+  }
+
+  /**
+   * Returns false when the queue stays full for longer than the enqueue timeout or when the queue has been closed.
+   */
+  public boolean offer(T item) {
+    return reserve() && putReserved(item);
+  }
+
+  /**
+   * Waits for room in the queue. This is for items that must not be rejected e.g. the ones already journaled.
+   */
+  public void put(T item) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("The write-behind queue is closed");
+    }
+    room.acquire();
+    if (!putReserved(item)) {
+      throw new IllegalStateException("The write-behind queue is closed");
+    }
+  }
+
+  /**
+   * Takes a slot for an item that is added later with {@link #putReserved}, waiting at most the enqueue timeout.
+   * Returns false when the queue stays full or has been closed.
+   */
+  public boolean reserve() {
+    if (closed) {
+      return false;
+    }
+
+    try {
+      return room.tryAcquire(config.enqueueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Gives back a slot taken by {@link #reserve()} without adding an item.
+   */
+  public void cancelReservation() {
+    room.release();
+  }
+
+  /**
+   * Adds an item into a slot taken by {@link #reserve()}, without waiting. Returns false, and gives the slot back, when
+   * the queue has been closed meanwhile.
+   */
+  public boolean putReserved(T item) {
+    if (closed) {
+      room.release();
+      return false;
+    }
+    queue.add(item);
+    return true;
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  private void run() {
+    var batch = new ArrayList<T>(config.maxBatchSize());
+
+    while (!abandoned && (!closed || !queue.isEmpty())) {
+      try {
+        var first = queue.poll(POLL_SLICE_NANOS, TimeUnit.NANOSECONDS);
+        if (first == null) {
+          continue;
+        }
+        room.release();
+        batch.add(first);
+
+        // Polls in short slices so that close() doesn't wait for a whole flush interval.
+        var deadline = System.nanoTime() + config.flushInterval().toNanos();
+        while (batch.size() < config.maxBatchSize() && !closed) {
+          var remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          var next = queue.poll(Math.min(remaining, POLL_SLICE_NANOS), TimeUnit.NANOSECONDS);
+          if (next != null) {
+            room.release();
+            batch.add(next);
+          }
+        }
+        room.release(queue.drainTo(batch, config.maxBatchSize() - batch.size()));
+      } catch (InterruptedException e) {
+        // Only close() interrupts the flusher, once it has given up. The collected signups are reported as left.
+        return;
+      }
+
+      flush(batch);
+      batch.clear();
+    }
+  }
+
+  private void flush(List<T> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    flushing = batch.size();
+    try {
+      flusher.flush(List.copyOf(batch));
+      if (!abandoned) {
+        flushedCount.addAndGet(batch.size());
+      }
+    } catch (Exception e) {
+      // After close() gives up, the batch is already reported as left.
+      if (!abandoned) {
+        failedCount.addAndGet(batch.size());
+        logger.log(Level.SEVERE, "Unable to flush " + batch.size() + " signup(s)", e);
+      }
+    } finally {
+      flushing = 0;
+    }
+  }
+
+  /**
+   * Stops accepting signups and waits up to {@code timeout} for the queued ones to be flushed. Then the flusher stops
+   * and the batch in flight is cancelled, so nothing is written after this returns.
+   *
+   * @return the number of signups that were not flushed by the timeout, including the batch in flight
+   */
+  public int close(Duration timeout) {
+    closed = true;
+    try {
+      if (thread.join(timeout)) {
+        return 0;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    abandoned = true;
+    var left = queue.size() + flushing;
+    logger.warning("The write-behind queue did not drain in " + timeout + ". " + left + " signup(s) are dropped.");
+    thread.interrupt();
+    try {
+      if (!thread.join(Duration.ofSeconds(1))) {
+        logger.warning("The flusher ignored the interrupt and may still write its batch.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return left;
+  }
+
+  @Override
+  public void close() {
+    close(Duration.ofSeconds(30));
+  }
+}
@@ -0,0 +1,18 @@
+package tanin.wait;
+
+/**
+ * Limits on the body of `POST /write`.
+ *
+ * @param maxBodyBytes the largest body that is parsed. A larger one gets 413, before it is read when it has a
+ *                     Content-Length.
+ * @param maxFieldLength the max number of characters of the group. The email is capped at 254 characters regardless.
+ */
+public record WriteRequestConfig(
+  int maxBodyBytes,
+  int maxFieldLength
+) {
+  public static final WriteRequestConfig DEFAULT = new WriteRequestConfig(
+    4096,
+    256
+  );
+}
@@ -0,0 +1,366 @@
+package tanin.wait;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pulls `email` and `group` out of a `POST /write` JSON object in one pass over its bytes, without building a JSON tree.
+ * Other fields are skipped, and the last of a repeated field wins.
+ */
+class WriteRequestParser {
+  static final int MAX_EMAIL_LENGTH = 254;
+  static final int MAX_LOCAL_PART_LENGTH = 64;
+  static final int MAX_DOMAIN_LABEL_LENGTH = 63;
+  static final int MAX_SKIPPED_DEPTH = 16;
+
+  private static final byte[] EMAIL_KEY = "email".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] GROUP_KEY = "group".getBytes(StandardCharsets.US_ASCII);
+
+  static class InvalidRequestException extends RuntimeException {
+    InvalidRequestException(String message) {
+      super(message);
+    }
+  }
+
+  private final byte[] body;
+  private final int maxFieldLength;
+  private int pos = 0;
+
+  private WriteRequestParser(byte[] body, int maxFieldLength) {
+    this.body = body;
+    this.maxFieldLength = maxFieldLength;
+  }
+
+  /**
+   * Returns the signup, or null when the email is missing or invalid. Throws {@link InvalidRequestException} when the
+   * body isn't a JSON object or a field is too long.
+   */
+  static Signup parse(byte[] body, int maxFieldLength) {
+    return new WriteRequestParser(body, maxFieldLength).parseObject();
+  }
+
+  private Signup parseObject() {
+    String email = null;
+    String group = null;
+
+    skipWhitespace();
+    expect('{');
+    skipWhitespace();
+
+    if (peek() == '}') {
+      pos++;
+    } else {
+      while (true) {
+        skipWhitespace();
+        expect('"');
+        var keyStart = pos;
+        var keyHasEscapes = skipString();
+        var keyEnd = pos - 1;
+
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+
+        if (!keyHasEscapes && matches(keyStart, keyEnd, EMAIL_KEY)) {
+          email = readStringOrNull("email", MAX_EMAIL_LENGTH);
+        } else if (!keyHasEscapes && matches(keyStart, keyEnd, GROUP_KEY)) {
+          group = readStringOrNull("group", maxFieldLength);
+        } else if (keyHasEscapes && isEscapedKey(keyStart, keyEnd, "email")) {
+          email = readStringOrNull("email", MAX_EMAIL_LENGTH);
+        } else if (keyHasEscapes && isEscapedKey(keyStart, keyEnd, "group")) {
+          group = readStringOrNull("group", maxFieldLength);
+        } else {
+          skipValue();
+        }
+
+        skipWhitespace();
+        var c = next();
+        if (c == '}') {
+          break;
+        }
+        if (c != ',') {
+          throw new InvalidRequestException("The body is not a valid JSON object.");
+        }
+      }
+    }
+
+    skipWhitespace();
+    if (pos != body.length) {
+      throw new InvalidRequestException("The body is not a valid JSON object.");
+    }
+
+    if (email == null) {
+      return null;
+    }
+    email = email.trim();
+    if (!isValidEmail(email)) {
+      return null;
+    }
+    return new Signup(email, group == null ? null : group.trim());
+  }
+
+  private String readStringOrNull(String field, int maxLength) {
+    if (peek() == 'n') {
+      expectLiteral("null");
+      return null;
+    }
+    if (peek() != '"') {
+      throw new InvalidRequestException("The " + field + " must be a string.");
+    }
+    pos++;
+
+    var start = pos;
+    var hasEscapes = skipString();
+    var end = pos - 1;
+
+    // An escape takes at most 6 bytes per character, so a longer raw value is too long without decoding it.
+    if (end - start > maxLength * 6L) {
+      throw new InvalidRequestException("The " + field + " is too long.");
+    }
+    var value = decode(start, end, hasEscapes);
+    if (value.length() > maxLength) {
+      throw new InvalidRequestException("The " + field + " is too long.");
+    }
+    return value;
+  }
+
+  /**
+   * Moves past the closing quote of a string whose opening quote has been consumed. Returns whether it has escapes.
+   */
+  private boolean skipString() {
+    var hasEscapes = false;
+    while (pos < body.length) {
+      var c = body[pos++];
+      if (c == '"') {
+        return hasEscapes;
+      }
+      if (c == '\\') {
+        hasEscapes = true;
+        pos++;
+      } else if (c >= 0 && c < 0x20) {
+        throw new InvalidRequestException("The body is not a valid JSON object.");
+      }
+    }
+    throw new InvalidRequestException("The body is not a valid JSON object.");
+  }
+
+  private String decode(int start, int end, boolean hasEscapes) {
+    if (!hasEscapes) {
+      return new String(body, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    var out = new StringBuilder(end - start);
+    var runStart = start;
+    var i = start;
+    while (i < end) {
+      if (body[i] != '\\') {
+        i++;
+        continue;
+      }
+
+      out.append(new String(body, runStart, i - runStart, StandardCharsets.UTF_8));
+      var escaped = body[i + 1];
+      switch (escaped) {
+        case '"', '\\', '/' -> out.append((char) escaped);
+        case 'b' -> out.append('\b');
+        case 'f' -> out.append('\f');
+        case 'n' -> out.append('\n');
+        case 'r' -> out.append('\r');
+        case 't' -> out.append('\t');
+        case 'u' -> {
+          if (i + 6 > end) {
+            throw new InvalidRequestException("The body is not a valid JSON object.");
+          }
+          out.append((char) parseHex(i + 2));
+          i += 4;
+        }
+        default -> throw new InvalidRequestException("The body is not a valid JSON object.");
+      }
+      i += 2;
+      runStart = i;
+    }
+    out.append(new String(body, runStart, end - runStart, StandardCharsets.UTF_8));
+    return out.toString();
+  }
+
+  private int parseHex(int start) {
+    var value = 0;
+    for (int i = start; i < start + 4; i++) {
+      var digit = Character.digit(body[i], 16);
+      if (digit < 0) {
+        throw new InvalidRequestException("The body is not a valid JSON object.");
+      }
+      value = value * 16 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Skips a value of any type. Only strings are checked for well-formedness; the rest is skipped by its brackets.
+   */
+  private void skipValue() {
+    var depth = 0;
+    do {
+      skipWhitespace();
+      var c = peek();
+      switch (c) {
+        case '"' -> {
+          pos++;
+          skipString();
+        }
+        case '{', '[' -> {
+          if (++depth > MAX_SKIPPED_DEPTH) {
+            throw new InvalidRequestException("The body is nested too deeply.");
+          }
+          pos++;
+        }
+        case '}', ']', ',', ':' -> {
+          if (depth == 0) {
+            throw new InvalidRequestException("The body is not a valid JSON object.");
+          }
+          if (c == '}' || c == ']') {
+            depth--;
+          }
+          pos++;
+        }
+        default -> skipLiteral();
+      }
+    } while (depth > 0);
+  }
+
+  // Numbers, true, false and null.
+  private void skipLiteral() {
+    var start = pos;
+    while (pos < body.length) {
+      var c = body[pos];
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E') {
+        pos++;
+      } else {
+        break;
+      }
+    }
+    if (pos == start) {
+      throw new InvalidRequestException("The body is not a valid JSON object.");
+    }
+  }
+
+  private boolean matches(int start, int end, byte[] key) {
+    if (end - start != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (body[start + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isEscapedKey(int start, int end, String key) {
+    // An escape shortens the key, so a key that is too long to decode into it is skipped without decoding.
+    return end - start <= key.length() * 6 && decode(start, end, true).equals(key);
+  }
+
+  private void skipWhitespace() {
+    while (pos < body.length) {
+      var c = body[pos];
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private int peek() {
+    if (pos >= body.length) {
+      throw new InvalidRequestException("The body is not a valid JSON object.");
+    }
+    return body[pos];
+  }
+
+  private int next() {
+    var c = peek();
+    pos++;
+    return c;
+  }
+
+  private void expect(char expected) {
+    if (next() != expected) {
+      throw new InvalidRequestException("The body is not a valid JSON object.");
+    }
+  }
+
+  private void expectLiteral(String literal) {
+    for (int i = 0; i < literal.length(); i++) {
+      expect(literal.charAt(i));
+    }
+  }
+
+  /**
+   * Checks the address against the rules of RFC 5321 that matter for a signup form: a dot-atom local part of at most
+   * 64 characters, and a domain of at least two dot-separated labels of letters, digits and inner hyphens. Quoted local
+   * parts and IP literals are rejected. Non-ASCII letters are allowed, as in RFC 6531.
+   */
+  static boolean isValidEmail(String email) {
+    var length = email.length();
+    if (length < 3 || length > MAX_EMAIL_LENGTH) {
+      return false;
+    }
+
+    var at = email.lastIndexOf('@');
+    if (at < 1 || at > MAX_LOCAL_PART_LENGTH || at == length - 1) {
+      return false;
+    }
+
+    var previous = '.';
+    for (int i = 0; i < at; i++) {
+      var c = email.charAt(i);
+      if (c == '.') {
+        if (previous == '.') {
+          // Leading or consecutive dots.
+          return false;
+        }
+      } else if (!isAtext(c)) {
+        return false;
+      }
+      previous = c;
+    }
+    if (previous == '.') {
+      return false;
+    }
+
+    var labels = 0;
+    var labelStart = at + 1;
+    for (int i = at + 1; i <= length; i++) {
+      if (i < length && email.charAt(i) != '.') {
+        var c = email.charAt(i);
+        if (!(c == '-' || isLetterOrDigit(c))) {
+          return false;
+        }
+        continue;
+      }
+
+      var labelLength = i - labelStart;
+      if (labelLength == 0 || labelLength > MAX_DOMAIN_LABEL_LENGTH) {
+        return false;
+      }
+      if (email.charAt(labelStart) == '-' || email.charAt(i - 1) == '-') {
+        return false;
+      }
+      labels++;
+      labelStart = i + 1;
+    }
+
+    return labels >= 2;
+  }
+
+  private static boolean isAtext(char c) {
+    return isLetterOrDigit(c) || "!#$%&'*+/=?^_`{|}~-".indexOf(c) >= 0;
+  }
+
+  private static boolean isLetterOrDigit(char c) {
+    if (c < 0x80) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+    return Character.isLetterOrDigit(c);
+  }
+}
@@ -0,0 +1,101 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessTokenManagerTest {
+  StubGoogleServer stub;
+  String privateKeyPem;
+  HttpClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    privateKeyPem = StubGoogleServer.generatePrivateKeyPem();
+    client = HttpClient.newHttpClient();
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    stub.close();
+  }
+
+  AccessTokenManager buildManager(Duration refreshMargin) {
+    return new AccessTokenManager(
+      "test@example.com",
+      privateKeyPem,
+      client,
+      Duration.ofSeconds(5),
+      stub.tokenUrl(),
+      refreshMargin
+    );
+  }
+
+  @Test
+  void cacheToken() {
+    try (var manager = buildManager(AccessTokenManager.DEFAULT_REFRESH_MARGIN)) {
+      for (int i = 0; i < 10; i++) {
+        assertEquals("stub-token-1", manager.getAccessToken());
+      }
+      assertEquals(1, stub.tokenRequests.get());
+    }
+  }
+
+  @Test
+  void shareInFlightRefresh() throws Exception {
+    stub.tokenLatencyMillis = 300;
+
+    try (var manager = buildManager(AccessTokenManager.DEFAULT_REFRESH_MARGIN); var executor = Executors.newFixedThreadPool(20)) {
+      var futures = new ArrayList<Future<String>>();
+      for (int i = 0; i < 20; i++) {
+        futures.add(executor.submit((Callable<String>) manager::getAccessToken));
+      }
+
+      for (var future : futures) {
+        assertEquals("stub-token-1", future.get());
+      }
+      assertEquals(1, stub.tokenRequests.get());
+    }
+  }
+
+  @Test
+  void refreshInBackgroundBeforeExpiry() throws InterruptedException {
+    stub.tokenExpiresInSeconds = 30;
+
+    // The token enters the refresh margin immediately, so the next call refreshes it in the background.
+    try (var manager = buildManager(Duration.ofSeconds(25))) {
+      assertEquals("stub-token-1", manager.getAccessToken());
+      assertEquals("stub-token-1", manager.getAccessToken());
+
+      var startTime = System.currentTimeMillis();
+      while (!manager.getAccessToken().equals("stub-token-2") && (System.currentTimeMillis() - startTime) < 5000) {
+        Thread.sleep(50);
+      }
+
+      assertEquals("stub-token-2", manager.getAccessToken());
+    }
+  }
+
+  @Test
+  void refetchExpiredToken() {
+    // Tokens that expire within the skew are never handed out.
+    stub.tokenExpiresInSeconds = 5;
+
+    try (var manager = buildManager(Duration.ZERO)) {
+      assertEquals("stub-token-1", manager.getAccessToken());
+      assertEquals("stub-token-2", manager.getAccessToken());
+      assertEquals(2, stub.tokenRequests.get());
+    }
+  }
+}
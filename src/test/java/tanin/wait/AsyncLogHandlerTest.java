@@ -0,0 +1,103 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLogHandlerTest {
+  static class RecordingHandler extends Handler {
+    final List<String> messages = new CopyOnWriteArrayList<>();
+    final CountDownLatch released;
+
+    RecordingHandler(CountDownLatch released) {
+      this.released = released;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      messages.add(record.getMessage());
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
+  @Test
+  void writeEveryRecordInOrder() {
+    var target = new RecordingHandler(new CountDownLatch(0));
+    var handler = new AsyncLogHandler(target, 16, AsyncLogHandler.OverflowPolicy.BLOCK);
+
+    for (int i = 0; i < 1000; i++) {
+      handler.publish(new LogRecord(Level.INFO, "line " + i));
+    }
+    handler.close();
+
+    assertEquals(1000, target.messages.size());
+    assertEquals("line 0", target.messages.getFirst());
+    assertEquals("line 999", target.messages.getLast());
+  }
+
+  @Test
+  void dropWhenFull() throws InterruptedException {
+    var released = new CountDownLatch(1);
+    var target = new RecordingHandler(released);
+    var handler = new AsyncLogHandler(target, 4, AsyncLogHandler.OverflowPolicy.DROP);
+
+    handler.publish(new LogRecord(Level.INFO, "first"));
+    while (handler.buffered() > 0) {
+      Thread.sleep(10);
+    }
+    // The writer is stuck on the first record, so only 4 more fit.
+    for (int i = 0; i < 10; i++) {
+      handler.publish(new LogRecord(Level.INFO, "line " + i));
+    }
+    assertEquals(6, handler.droppedCount.get());
+
+    released.countDown();
+    handler.close();
+
+    // The drops are reported right after the batch that was being written.
+    assertEquals(
+      List.of("first", "Dropped 6 log record(s) because the log buffer was full", "line 0", "line 1", "line 2", "line 3"),
+      target.messages
+    );
+  }
+
+  @Test
+  void blockWhenFull() throws InterruptedException {
+    var released = new CountDownLatch(1);
+    var target = new RecordingHandler(released);
+    var handler = new AsyncLogHandler(target, 4, AsyncLogHandler.OverflowPolicy.BLOCK);
+
+    var logging = new Thread(() -> {
+      for (int i = 0; i < 10; i++) {
+        handler.publish(new LogRecord(Level.INFO, "line " + i));
+      }
+    });
+    logging.start();
+    logging.join(300);
+    assertTrue(logging.isAlive());
+
+    released.countDown();
+    logging.join();
+    handler.close();
+
+    assertEquals(10, target.messages.size());
+    assertEquals(0, handler.droppedCount.get());
+  }
+}
@@ -23,6 +23,7 @@ public class Base {
 
   WebDriver webDriver;
   WaitServer server;
+  StubGoogleServer stub;
 
   @BeforeAll
   void setUpAll() throws SQLException, URISyntaxException, InterruptedException {
@@ -53,12 +54,14 @@ public class Base {
   }
 
   @BeforeEach
-  void setUp() throws SQLException, URISyntaxException {
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
     server = new WaitServer(
       PORT,
-      Main.getServiceAccountKeyJson(),
-      Main.getSheetId(),
-      Main.getSheetName()
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      WaitConfig.builder().googleEndpoints(stub.endpoints()).build()
     );
     server.start();
   }
@@ -68,6 +71,9 @@ public class Base {
     if (server != null) {
       server.stop();
     }
+    if (stub != null) {
+      stub.close();
+    }
   }
 
   @AfterAll
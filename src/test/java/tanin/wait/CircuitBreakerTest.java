@@ -0,0 +1,70 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+  static final CircuitBreakerConfig CONFIG = new CircuitBreakerConfig(true, 0.5, 4, 2, Duration.ofMillis(50));
+
+  CircuitBreaker.Permit openThenProbe(CircuitBreaker breaker) throws InterruptedException {
+    breaker.onFailure(breaker.acquire());
+    breaker.onFailure(breaker.acquire());
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    Thread.sleep(CONFIG.openDuration().toMillis() + 20);
+    var probe = breaker.acquire();
+    assertTrue(probe.probe());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    return probe;
+  }
+
+  @Test
+  void ignoreALateCallWhileTheProbeIsInFlight() throws InterruptedException {
+    var breaker = new CircuitBreaker(CONFIG);
+    var lateSuccess = breaker.acquire();
+    var lateFailure = breaker.acquire();
+    var lateCancel = breaker.acquire();
+    var probe = openThenProbe(breaker);
+
+    // Let through while closed, and finish after the probe started.
+    breaker.onSuccess(lateSuccess);
+    breaker.onFailure(lateFailure);
+    breaker.onCancel(lateCancel);
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+
+    breaker.onSuccess(probe);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void reopenWhenTheProbeFails() throws InterruptedException {
+    var breaker = new CircuitBreaker(CONFIG);
+    var probe = openThenProbe(breaker);
+
+    breaker.onFailure(probe);
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+  }
+
+  @Test
+  void letTheNextCallProbeWhenTheProbeIsCancelled() throws InterruptedException {
+    var breaker = new CircuitBreaker(CONFIG);
+    var probe = openThenProbe(breaker);
+
+    breaker.onCancel(probe);
+
+    var next = breaker.acquire();
+    assertTrue(next.probe());
+    // The cancelled probe no longer counts.
+    breaker.onFailure(probe);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    breaker.onSuccess(next);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+}
@@ -0,0 +1,96 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+  static ConcurrencyLimiter buildLimiter(int initialLimit) {
+    return new ConcurrencyLimiter(
+      new ConcurrencyLimitConfig(true, initialLimit, 1, 10, Duration.ofSeconds(1), 0.5, Duration.ofSeconds(1)),
+      new Metrics().histogram("queue_wait", "The queue wait")
+    );
+  }
+
+  @Test
+  void queueCallsOverTheLimitInOrder() throws Exception {
+    var limiter = buildLimiter(2);
+    var first = limiter.acquire(Duration.ofSeconds(5)).get();
+    limiter.acquire(Duration.ofSeconds(5)).get();
+
+    var third = limiter.acquire(Duration.ofSeconds(5));
+    var fourth = limiter.acquire(Duration.ofSeconds(5));
+    assertFalse(third.isDone());
+    assertEquals(2, limiter.queued());
+
+    first.onIgnore();
+
+    assertTrue(third.isDone());
+    assertFalse(fourth.isDone());
+    assertEquals(2, limiter.inFlight());
+    assertEquals(1, limiter.queued());
+  }
+
+  @Test
+  void increaseAdditivelyAndDecreaseMultiplicatively() throws Exception {
+    var limiter = buildLimiter(4);
+
+    var permits = new ArrayList<ConcurrencyLimiter.Permit>();
+    for (int i = 0; i < 4; i++) {
+      permits.add(limiter.acquire(Duration.ZERO).get());
+    }
+    for (var permit : permits) {
+      permit.onSuccess();
+    }
+    // Each success adds 1/limit while at least half of the limit is in use, which the last one wasn't.
+    assertEquals(4.49, limiter.limit(), 0.01);
+
+    permits.clear();
+    for (int i = 0; i < 4; i++) {
+      permits.add(limiter.acquire(Duration.ZERO).get());
+    }
+    permits.get(0).onThrottled();
+    assertEquals(2.24, limiter.limit(), 0.01);
+
+    // The calls that were in flight before the decrease don't decrease it again.
+    permits.get(1).onThrottled();
+    permits.get(2).onThrottled();
+    assertEquals(2.24, limiter.limit(), 0.01);
+
+    // Nor does a cancelled call change it.
+    permits.get(3).onIgnore();
+    assertEquals(2.24, limiter.limit(), 0.01);
+  }
+
+  @Test
+  void failQueuedCallsAfterTheDeadline() throws Exception {
+    var limiter = buildLimiter(1);
+    var permit = limiter.acquire(Duration.ZERO).get();
+
+    var queued = limiter.acquire(Duration.ofMillis(50));
+    var error = assertThrows(ExecutionException.class, queued::get);
+
+    assertInstanceOf(ConcurrencyLimiter.QueueTimeoutException.class, error.getCause());
+    assertEquals(0, limiter.queued());
+    permit.onSuccess();
+    assertEquals(0, limiter.inFlight());
+  }
+
+  @Test
+  void skipCancelledCalls() throws Exception {
+    var limiter = buildLimiter(1);
+    var permit = limiter.acquire(Duration.ZERO).get();
+    var cancelled = limiter.acquire(Duration.ofSeconds(5));
+    var next = limiter.acquire(Duration.ofSeconds(5));
+
+    cancelled.cancel(false);
+    permit.onIgnore();
+
+    assertTrue(next.isDone());
+    assertEquals(1, limiter.inFlight());
+  }
+}
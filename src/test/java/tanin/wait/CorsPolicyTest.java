@@ -0,0 +1,72 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorsPolicyTest {
+  static final CorsPolicy POLICY = new CorsPolicy(new CorsConfig(List.of("https://example.com", " https://*.Example.org "), Duration.ofHours(1)));
+
+  @Test
+  void allowAnyOriginByDefault() {
+    var policy = new CorsPolicy(CorsConfig.DEFAULT);
+
+    var headers = policy.headersFor("https://anything.test");
+    assertEquals("*", headers.json().get("Access-Control-Allow-Origin"));
+    assertEquals("application/json", headers.json().get("Content-Type"));
+    assertEquals("7200", headers.preflight().get("Access-Control-Max-Age"));
+    assertSame(headers, policy.headersFor(null));
+  }
+
+  @Test
+  void matchExactAndWildcardOrigins() {
+    assertTrue(POLICY.isAllowed("https://example.com"));
+    assertTrue(POLICY.isAllowed("https://www.example.org"));
+    assertTrue(POLICY.isAllowed("https://a.b.example.org"));
+
+    assertFalse(POLICY.isAllowed("https://example.org"));
+    assertFalse(POLICY.isAllowed("http://www.example.org"));
+    assertFalse(POLICY.isAllowed("https://www.example.com"));
+    assertFalse(POLICY.isAllowed("https://evilexample.org"));
+    assertFalse(POLICY.isAllowed("https://www.example.org.evil.test"));
+    assertFalse(POLICY.isAllowed("null"));
+  }
+
+  @Test
+  void reuseHeadersPerOrigin() {
+    var allowed = POLICY.headersFor("https://www.example.org");
+    assertEquals("https://www.example.org", allowed.json().get("Access-Control-Allow-Origin"));
+    assertEquals("Origin", allowed.json().get("Vary"));
+    assertEquals("3600", allowed.preflight().get("Access-Control-Max-Age"));
+    assertSame(allowed, POLICY.headersFor("https://www.example.org"));
+    assertSame(POLICY.headersFor("https://example.com"), POLICY.headersFor("https://example.com"));
+
+    var refused = POLICY.headersFor("https://evil.test");
+    assertNull(refused.json().get("Access-Control-Allow-Origin"));
+    assertNull(refused.preflight().get("Access-Control-Max-Age"));
+    assertEquals("application/json", refused.json().get("Content-Type"));
+  }
+
+  @Test
+  void refuseOnlyOriginsOffTheList() {
+    assertFalse(POLICY.refuses("https://example.com"));
+    assertFalse(POLICY.refuses("https://www.example.org"));
+    assertFalse(POLICY.refuses(null));
+    assertTrue(POLICY.refuses("https://evil.test"));
+    assertTrue(POLICY.refuses("null"));
+
+    assertFalse(new CorsPolicy(CorsConfig.DEFAULT).refuses("https://anything.test"));
+  }
+
+  @Test
+  void mergeWithOtherHeaders() {
+    var headers = POLICY.addTo(Map.of("Content-Type", "application/json", "Retry-After", "3"), "https://example.com");
+
+    assertEquals("3", headers.get("Retry-After"));
+    assertEquals("https://example.com", headers.get("Access-Control-Allow-Origin"));
+  }
+}
@@ -0,0 +1,67 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvFileSinkTest {
+  @Test
+  void appendRowsWithTheColumnsOfTheSheet() throws Exception {
+    var directory = Files.createTempDirectory("wait-csv");
+    var sink = new CsvFileSink(directory, 1024 * 1024);
+    var createdAt = Instant.parse("2024-01-01T00:00:00Z");
+
+    sink.write(List.of(new Signup("a@example.com", "launch", createdAt), new Signup("b@example.com", null, createdAt)));
+    sink.write(List.of(new Signup("c@example.com", "a, \"b\"", createdAt), new Signup("-c@example.com", "=1+1", createdAt)));
+
+    assertEquals(
+      "email,createdAt,group\n" +
+        "a@example.com,2024-01-01T00:00:00Z,launch\n" +
+        "b@example.com,2024-01-01T00:00:00Z,\n" +
+        "c@example.com,2024-01-01T00:00:00Z,\"a, \"\"b\"\"\"\n" +
+        "'-c@example.com,2024-01-01T00:00:00Z,'=1+1\n",
+      Files.readString(directory.resolve(CsvFileSink.FILE_NAME))
+    );
+  }
+
+  @Test
+  void prefixEveryFormulaTrigger() {
+    assertEquals("'=1+1", CsvFileSink.escape("=1+1"));
+    assertEquals("'+1", CsvFileSink.escape("+1"));
+    assertEquals("'-1", CsvFileSink.escape("-1"));
+    assertEquals("'@SUM(A1)", CsvFileSink.escape("@SUM(A1)"));
+    assertEquals("'\t=1+1", CsvFileSink.escape("\t=1+1"));
+    assertEquals("\"'\r=1+1\"", CsvFileSink.escape("\r=1+1"));
+    assertEquals("a=1", CsvFileSink.escape("a=1"));
+  }
+
+  @Test
+  void rollOverAtTheMaxSize() throws Exception {
+    var directory = Files.createTempDirectory("wait-csv");
+    var sink = new CsvFileSink(directory, 100);
+
+    for (int i = 0; i < 5; i++) {
+      sink.write(List.of(new Signup("test" + i + "@example.com", "launch")));
+    }
+
+    try (var files = Files.list(directory)) {
+      var all = files.toList();
+      assertTrue(all.size() > 1);
+      for (var file : all) {
+        assertTrue(Files.size(file) <= 100);
+        assertTrue(Files.readString(file).startsWith(CsvFileSink.HEADER));
+      }
+      assertEquals(5, all.stream().mapToLong(file -> {
+        try {
+          return Files.readAllLines(file).size() - 1;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }).sum());
+    }
+  }
+}
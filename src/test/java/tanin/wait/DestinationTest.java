@@ -0,0 +1,57 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DestinationTest {
+  @Test
+  void rejectPastAFullJournalQueueWithoutJournaling() throws Exception {
+    var flushing = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    SignupSink sink = signups -> {
+      flushing.countDown();
+      release.await();
+    };
+    var config = WaitConfig.builder().writeBehind(new WriteBehindConfig(true, 2, 1, Duration.ofMillis(10), Duration.ofMillis(10))).build();
+
+    try (var journal = SignupJournal.open(Files.createTempDirectory("wait-journal"), 1024 * 1024)) {
+      var destination = new Destination("default", sink, config, journal, new Metrics());
+      assertTrue(destination.enqueue(new Signup("first@example.com", "group")));
+      flushing.await();
+
+      var accepted = new AtomicInteger();
+      var slowestNanos = new AtomicLong();
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (int i = 0; i < 200; i++) {
+          var signup = new Signup("test" + i + "@example.com", "group");
+          executor.submit(() -> {
+            var startNanos = System.nanoTime();
+            if (destination.enqueue(signup)) {
+              accepted.incrementAndGet();
+            }
+            slowestNanos.accumulateAndGet(System.nanoTime() - startNanos, Math::max);
+            return null;
+          });
+        }
+      }
+
+      // The first signup is in flight, so there is room for 2 more. The rest are neither journaled nor left waiting.
+      assertEquals(2, accepted.get());
+      assertEquals(2, destination.journalQueue.size());
+      assertEquals(3, journal.unacknowledgedCount());
+      assertTrue(slowestNanos.get() < Duration.ofSeconds(1).toNanos());
+
+      release.countDown();
+      destination.close(Duration.ofSeconds(5));
+      assertEquals(0, journal.unacknowledgedCount());
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExporterTest {
+  static final int PORT = 9099;
+
+  @Test
+  void keepASlowExportFromHoldingBackAnother() throws Exception {
+    var release = new CountDownLatch(1);
+    var fastRows = new CopyOnWriteArrayList<Signup>();
+    var queueConfig = new WriteBehindConfig(true, 2, 10, Duration.ofMillis(10), Duration.ZERO);
+    var slow = new Exporter("slow", signups -> release.await(), queueConfig, new Metrics());
+    var fast = new Exporter("fast", fastRows::addAll, new WriteBehindConfig(true, 100, 10, Duration.ofMillis(10), Duration.ZERO), new Metrics());
+
+    try {
+      var startNanos = System.nanoTime();
+      for (int i = 0; i < 20; i++) {
+        var signup = new Signup("test" + i + "@example.com", "launch");
+        slow.offer(signup);
+        fast.offer(signup);
+      }
+      // Offering never waits for room.
+      assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+
+      var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (fastRows.size() < 20 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(20, fastRows.size());
+      assertTrue(slow.droppedCount.get() > 0);
+      assertEquals(0, fast.droppedCount.get());
+    } finally {
+      release.countDown();
+      slow.close(Duration.ofSeconds(5));
+      fast.close(Duration.ofSeconds(5));
+    }
+  }
+
+  @Test
+  void exportAcceptedSignupsWhileTheWebhookHangs() throws Exception {
+    var release = new CountDownLatch(1);
+    var posted = new CopyOnWriteArrayList<String>();
+    var webhook = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    webhook.createContext("/hook", exchange -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      posted.add(new String(exchange.getRequestBody().readAllBytes()));
+      exchange.sendResponseHeaders(204, -1);
+      exchange.close();
+    });
+    webhook.start();
+
+    var directory = Files.createTempDirectory("wait-csv");
+    var sheetRows = new CopyOnWriteArrayList<Signup>();
+    var server = new WaitServer(
+      PORT,
+      sheetRows::addAll,
+      WaitConfig.builder()
+        .deduplication(new DeduplicationConfig(true, false, 10000))
+        .csvExport(new CsvExportConfig(directory.toString(), 1024 * 1024, 100, 10, Duration.ofMillis(10)))
+        .webhook(new WebhookConfig("http://localhost:" + webhook.getAddress().getPort() + "/hook", Duration.ofSeconds(10), 100, 10, Duration.ofMillis(10)))
+        .build()
+    );
+    server.start();
+
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      for (var email : List.of("a@example.com", "b@example.com", "a@example.com")) {
+        var startNanos = System.nanoTime();
+        var response = client.send(
+          HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:" + PORT + "/write"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", email).add("group", "launch").toString()))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+        assertEquals(200, response.statusCode());
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+      }
+
+      // The duplicate isn't exported, and the CSV file doesn't wait for the webhook.
+      var file = directory.resolve(CsvFileSink.FILE_NAME);
+      var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while ((!Files.exists(file) || Files.readAllLines(file).size() < 3) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(3, Files.readAllLines(file).size());
+      assertEquals(2, sheetRows.size());
+      assertTrue(posted.isEmpty());
+
+      release.countDown();
+    } finally {
+      server.stop();
+      webhook.stop(0);
+    }
+
+    assertEquals(2, posted.stream().mapToInt(body -> Json.parse(body).asObject().get("signups").asArray().size()).sum());
+    assertEquals(2, server.pipeline.exporters.getLast().queue.flushedCount.get());
+  }
+}
@@ -0,0 +1,210 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoogleSheetServiceTest {
+  StubGoogleServer stub;
+  String privateKeyPem;
+  GoogleSheetService service;
+
+  static final WaitConfig CONFIG = WaitConfig.builder()
+    .httpClient(new HttpClientConfig(HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1), Duration.ofSeconds(5)))
+    .retry(new RetryConfig(3, Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(10)))
+    .circuitBreaker(new CircuitBreakerConfig(true, 0.5, 4, 4, Duration.ofMillis(300)))
+    .build();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    privateKeyPem = StubGoogleServer.generatePrivateKeyPem();
+    service = buildService(CONFIG);
+  }
+
+  @AfterEach
+  void tearDown() {
+    service.close();
+    stub.close();
+  }
+
+  GoogleSheetService buildService(WaitConfig config) {
+    return new GoogleSheetService("test@example.com", privateKeyPem, config.toBuilder().googleEndpoints(stub.endpoints()).build());
+  }
+
+  @Test
+  void reuseConnections() {
+    for (int i = 0; i < 20; i++) {
+      service.write("sheet-id", "Sheet1", "test" + i + "@example.com", "group");
+    }
+
+    assertEquals(20, stub.appendRequests.get());
+    assertEquals(1, stub.tokenRequests.get());
+    assertEquals(1, stub.clientConnections.size());
+  }
+
+  @Test
+  void retryThrottledAndUnavailable() {
+    stub.scriptedAppendStatuses.addAll(List.of(429, 503));
+    stub.retryAfterHeader = "0";
+
+    service.write("sheet-id", "Sheet1", "test@example.com", "group");
+
+    assertEquals(3, stub.appendRequests.get());
+    assertEquals(1, stub.appendedRows.size());
+  }
+
+  @Test
+  void giveUpAfterMaxAttempts() {
+    stub.scriptedAppendStatuses.addAll(List.of(500, 500, 500, 500));
+
+    var error = assertThrows(GoogleApiException.class, () -> service.write("sheet-id", "Sheet1", "test@example.com", "group"));
+
+    assertEquals(500, error.statusCode);
+    assertEquals(3, stub.appendRequests.get());
+  }
+
+  @Test
+  void giveUpWhenRetryAfterExceedsMaxBackoff() {
+    stub.scriptedAppendStatuses.addAll(List.of(429, 429));
+    stub.retryAfterHeader = "60";
+
+    var error = assertThrows(GoogleApiException.class, () -> service.write("sheet-id", "Sheet1", "test@example.com", "group"));
+
+    assertEquals(429, error.statusCode);
+    assertEquals(Duration.ofSeconds(60), error.retryAfter);
+    assertEquals(1, stub.appendRequests.get());
+  }
+
+  @Test
+  void doNotRetryClientErrors() {
+    stub.scriptedAppendStatuses.add(400);
+
+    var error = assertThrows(GoogleApiException.class, () -> service.write("sheet-id", "Sheet1", "test@example.com", "group"));
+
+    assertEquals(400, error.statusCode);
+    assertEquals(1, stub.appendRequests.get());
+    assertEquals(CircuitBreaker.State.CLOSED, service.circuitBreaker.state());
+  }
+
+  @Test
+  void openCircuitAndProbeAfterwards() throws InterruptedException {
+    for (int i = 0; i < 4; i++) {
+      stub.scriptedAppendStatuses.add(503);
+    }
+
+    assertThrows(GoogleApiException.class, () -> service.write("sheet-id", "Sheet1", "a@example.com", "group"));
+    assertThrows(CircuitBreaker.OpenException.class, () -> service.write("sheet-id", "Sheet1", "b@example.com", "group"));
+    assertEquals(CircuitBreaker.State.OPEN, service.circuitBreaker.state());
+    var requestsWhileOpen = stub.appendRequests.get();
+
+    assertThrows(CircuitBreaker.OpenException.class, () -> service.write("sheet-id", "Sheet1", "c@example.com", "group"));
+    assertEquals(requestsWhileOpen, stub.appendRequests.get());
+
+    Thread.sleep(400);
+    stub.scriptedAppendStatuses.clear();
+    service.write("sheet-id", "Sheet1", "d@example.com", "group");
+    assertEquals(CircuitBreaker.State.CLOSED, service.circuitBreaker.state());
+  }
+
+  @Test
+  void readRowsInPages() {
+    for (int i = 0; i < 5; i++) {
+      service.write("sheet-id", "Sheet1", "test" + i + "@example.com", "group");
+    }
+
+    var firstPage = service.readRows("sheet-id", "Sheet1", 1, 3);
+    var secondPage = service.readRows("sheet-id", "Sheet1", 4, 3);
+
+    assertEquals(3, firstPage.size());
+    assertEquals(2, secondPage.size());
+    assertEquals("test3@example.com", secondPage.getFirst().getFirst());
+    assertEquals("group", secondPage.getFirst().get(2));
+  }
+
+  @Test
+  void appendAsyncSharesOneTokenFetch() {
+    stub.tokenLatencyMillis = 200;
+    stub.appendLatencyMillis = 100;
+
+    var futures = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < 50; i++) {
+      futures.add(service.appendAsync("sheet-id", "Sheet1", List.of(new Signup("test" + i + "@example.com", "group"))));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+    assertEquals(1, stub.tokenRequests.get());
+    assertEquals(50, stub.appendedRows.size());
+  }
+
+  @Test
+  void appendAsyncTimesOut() {
+    stub.appendLatencyMillis = 1000;
+    service.close();
+    service = buildService(CONFIG.toBuilder().retry(new RetryConfig(3, Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofMillis(200))).build());
+
+    var future = service.appendAsync("sheet-id", "Sheet1", List.of(new Signup("test@example.com", "group")));
+
+    var error = assertThrows(ExecutionException.class, future::get);
+    assertInstanceOf(TimeoutException.class, error.getCause());
+    assertEquals(1, stub.appendRequests.get());
+  }
+
+  @Test
+  void cancelAppendAsync() throws Exception {
+    stub.appendLatencyMillis = 500;
+
+    var future = service.appendAsync("sheet-id", "Sheet1", List.of(new Signup("a@example.com", "group")));
+    while (stub.appendRequests.get() == 0) {
+      Thread.sleep(10);
+    }
+    assertTrue(future.cancel(true));
+    assertTrue(future.isCancelled());
+
+    // The cancelled call counts neither as a success nor as a failure.
+    stub.appendLatencyMillis = 0;
+    service.write("sheet-id", "Sheet1", "b@example.com", "group");
+    assertEquals(CircuitBreaker.State.CLOSED, service.circuitBreaker.state());
+  }
+
+  @Test
+  void adaptTheConcurrencyToAThrottlingSheet() throws Exception {
+    stub.appendLatencyMillis = 50;
+    stub.maxConcurrentAppends = 4;
+    service.close();
+    service = buildService(
+      CONFIG
+        .toBuilder()
+        .retry(new RetryConfig(20, Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(30)))
+        .circuitBreaker(new CircuitBreakerConfig(false, 0.5, 4, 4, Duration.ofMillis(300)))
+        .concurrencyLimit(new ConcurrencyLimitConfig(true, 16, 1, 32, Duration.ofSeconds(2), 0.5, Duration.ofSeconds(30)))
+        .build()
+    );
+
+    var futures = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < 200; i++) {
+      futures.add(service.appendAsync("sheet-id", "Sheet1", List.of(new Signup("test" + i + "@example.com", "group"))));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+
+    assertEquals(200, stub.appendedRows.size());
+    System.out.println(
+      "200 concurrent appends took " + stub.appendRequests.get() + " calls. At most " + stub.peakAppendsInFlight.get() +
+        " were in flight, and the limit ended at " + service.concurrencyLimiter.limit()
+    );
+    // Without the limiter, all 200 would have been in flight at once.
+    assertTrue(stub.peakAppendsInFlight.get() <= 17);
+    assertTrue(service.concurrencyLimiter.limit() < 16);
+    assertEquals(0, service.concurrencyLimiter.inFlight());
+  }
+}
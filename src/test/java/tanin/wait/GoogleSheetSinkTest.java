@@ -0,0 +1,74 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoogleSheetSinkTest {
+  StubGoogleServer stub;
+  GoogleSheetSink sink;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    var service = new GoogleSheetService(
+      "test@example.com",
+      StubGoogleServer.generatePrivateKeyPem(),
+      GoogleSheetServiceTest.CONFIG.toBuilder().googleEndpoints(stub.endpoints()).build()
+    );
+    sink = new GoogleSheetSink(service, "sheet-id", "Sheet1", 2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    sink.close();
+    stub.close();
+  }
+
+  @Test
+  void writeAndReadAll() {
+    var signups = List.of(
+      new Signup("a@example.com", "launch"),
+      new Signup("b@example.com", null),
+      new Signup("c@example.com", "launch")
+    );
+    sink.write(signups);
+
+    var read = new ArrayList<Signup>();
+    sink.readAll(read::add);
+
+    assertEquals(signups, read);
+    assertEquals(1, stub.appendRequests.get());
+    assertEquals(2, stub.readRequests.get());
+  }
+
+  @Test
+  void warmUpFetchesTheFirstToken() {
+    sink.warmUp();
+    assertEquals(1, stub.tokenRequests.get());
+    assertEquals(0, stub.appendRequests.get());
+
+    sink.write(List.of(new Signup("a@example.com", "launch")));
+
+    assertEquals(1, stub.tokenRequests.get());
+    assertEquals(1, stub.appendRequests.get());
+  }
+
+  @Test
+  void throttleOverQuota() {
+    stub.appendsPerMinute = 1;
+    sink.write(List.of(new Signup("a@example.com", "launch")));
+
+    var e = assertThrows(GoogleApiException.class, () -> sink.write(List.of(new Signup("b@example.com", "launch"))));
+
+    assertEquals(429, e.statusCode);
+    // The first append and 3 attempts of the second.
+    assertEquals(4, stub.appendRequests.get());
+    assertEquals(1, stub.appendedRows.size());
+  }
+}
@@ -0,0 +1,52 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+  @Test
+  void estimateQuantiles() {
+    var histogram = new Metrics().histogram("latency_seconds", "Latency");
+    for (int i = 0; i < 98; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+    }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(200));
+    histogram.record(TimeUnit.SECONDS.toNanos(30));
+
+    assertEquals(100, histogram.count());
+    assertEquals(0.005, histogram.quantile(0.5));
+    assertEquals(0.25, histogram.quantile(0.99));
+    assertEquals(Double.POSITIVE_INFINITY, histogram.quantile(1));
+  }
+
+  @Test
+  void reuseRegisteredMetrics() {
+    var metrics = new Metrics();
+
+    assertSame(metrics.counter("requests_total", "Requests", "status", "200"), metrics.counter("requests_total", "Requests", "status", "200"));
+    assertNotSame(metrics.counter("requests_total", "Requests", "status", "200"), metrics.counter("requests_total", "Requests", "status", "500"));
+    assertThrows(IllegalArgumentException.class, () -> metrics.histogram("requests_total", "Requests"));
+  }
+
+  @Test
+  void renderPrometheusText() {
+    var metrics = new Metrics();
+    metrics.counter("requests_total", "The requests", "path", "write", "status", "200").increment();
+    metrics.gauge("queue_depth", "The queue depth", () -> 7, "queue", "a\"b");
+    metrics.histogram("latency_seconds", "The latency", "call", "append").record(TimeUnit.MILLISECONDS.toNanos(30));
+
+    var text = metrics.render();
+
+    assertTrue(text.contains("# HELP requests_total The requests\n# TYPE requests_total counter\nrequests_total{path=\"write\",status=\"200\"} 1\n"), text);
+    assertTrue(text.contains("queue_depth{queue=\"a\\\"b\"} 7\n"), text);
+    assertTrue(text.contains("# TYPE latency_seconds histogram\n"), text);
+    assertTrue(text.contains("latency_seconds_bucket{call=\"append\",le=\"0.0005\"} 0\n"), text);
+    assertTrue(text.contains("latency_seconds_bucket{call=\"append\",le=\"0.05\"} 1\n"), text);
+    assertTrue(text.contains("latency_seconds_bucket{call=\"append\",le=\"+Inf\"} 1\n"), text);
+    assertTrue(text.contains("latency_seconds_sum{call=\"append\"} 0.03\n"), text);
+    assertTrue(text.contains("latency_seconds_count{call=\"append\"} 1\n"), text);
+  }
+}
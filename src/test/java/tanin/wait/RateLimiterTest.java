@@ -0,0 +1,49 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+  @Test
+  void allowBurstThenReject() {
+    var limiter = new RateLimiter("test", 1, 3, 100, Duration.ofMinutes(1));
+
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+
+    var retryAfter = limiter.tryAcquire("10.0.0.1");
+    assertNotNull(retryAfter);
+    assertTrue(retryAfter.compareTo(Duration.ZERO) > 0 && retryAfter.compareTo(Duration.ofSeconds(1)) <= 0);
+
+    // Other keys have their own buckets.
+    assertNull(limiter.tryAcquire("10.0.0.2"));
+  }
+
+  @Test
+  void refill() throws InterruptedException {
+    var limiter = new RateLimiter("test", 20, 1, 100, Duration.ofMinutes(1));
+
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+    assertNotNull(limiter.tryAcquire("10.0.0.1"));
+
+    Thread.sleep(60);
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+  }
+
+  @Test
+  void evictIdleBuckets() throws InterruptedException {
+    var limiter = new RateLimiter("test", 100, 1, 2, Duration.ofMinutes(1));
+
+    assertNull(limiter.tryAcquire("10.0.0.1"));
+    assertNull(limiter.tryAcquire("10.0.0.2"));
+    assertEquals(2, limiter.size());
+
+    Thread.sleep(20);
+    assertNull(limiter.tryAcquire("10.0.0.3"));
+    assertEquals(1, limiter.size());
+  }
+}
@@ -0,0 +1,115 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadApiTest {
+  static final int PORT = 9095;
+
+  StubGoogleServer stub;
+  WaitServer server;
+  HttpClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (server != null) {
+      server.stop();
+    }
+    client.close();
+    stub.close();
+  }
+
+  void startServer(WaitConfig config) throws Exception {
+    server = new WaitServer(
+      PORT,
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      config
+        .toBuilder()
+        .googleEndpoints(stub.endpoints())
+        .deduplication(new DeduplicationConfig(true, true, 10000))
+        .build()
+    );
+    server.start();
+  }
+
+  HttpResponse<String> get(String pathAndQuery, String token) throws Exception {
+    var builder = HttpRequest.newBuilder().uri(URI.create("http://localhost:" + PORT + pathAndQuery)).GET();
+    if (token != null) {
+      builder.header("Authorization", "Bearer " + token);
+    }
+    return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  void write(String email, String group) throws Exception {
+    var request = HttpRequest.newBuilder()
+      .uri(URI.create("http://localhost:" + PORT + "/write"))
+      .header("Content-Type", "application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", email).add("group", group).toString()))
+      .build();
+    assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+  }
+
+  @Test
+  void numberNewSignupsAfterTheSheet() throws Exception {
+    stub.appendedRows.add(Json.array("a@example.com", "2025-01-01T00:00:00Z", "launch"));
+    stub.appendedRows.add(Json.array("b@example.com", "2025-01-02T00:00:00Z", "launch"));
+    stub.appendedRows.add(Json.array("c@example.com", "2025-01-03T00:00:00Z", ""));
+    startServer(WaitConfig.builder().readApi(new ReadApiConfig("secret")).build());
+    while (!Json.parse(get("/stats", "secret").body()).asObject().get("ready").asBoolean()) {
+      Thread.sleep(10);
+    }
+
+    write("d@example.com", "launch");
+
+    var position = get("/position?email=D%40example.com&group=launch", "secret");
+    assertEquals(200, position.statusCode());
+    assertEquals(3, Json.parse(position.body()).asObject().get("position").asInt());
+    assertEquals(3, Json.parse(position.body()).asObject().get("signups").asInt());
+    assertEquals(1, Json.parse(get("/position?email=a%40example.com&group=launch", "secret").body()).asObject().get("position").asInt());
+    assertEquals(1, Json.parse(get("/position?email=c%40example.com", "secret").body()).asObject().get("position").asInt());
+    assertEquals(404, get("/position?email=c%40example.com&group=launch", "secret").statusCode());
+    assertEquals(400, get("/position?email=invalid", "secret").statusCode());
+
+    var stats = Json.parse(get("/stats", "secret").body()).asObject();
+    assertEquals(4, stats.get("signups").asLong());
+    assertEquals(3, stats.get("groups").asObject().get("launch").asLong());
+    assertEquals(1, stats.get("groups").asObject().get("").asLong());
+  }
+
+  @Test
+  void requireTheToken() throws Exception {
+    startServer(WaitConfig.builder().readApi(new ReadApiConfig("secret")).build());
+
+    assertEquals(401, get("/stats", null).statusCode());
+    assertEquals(401, get("/stats", "wrong").statusCode());
+    assertEquals(200, get("/stats", "secret").statusCode());
+    assertEquals(401, get("/position?email=a%40example.com", null).statusCode());
+  }
+
+  @Test
+  void refuseReadsWithoutAToken() throws Exception {
+    startServer(WaitConfig.DEFAULT);
+    write("a@example.com", "launch");
+
+    assertEquals(404, get("/position?email=a%40example.com&group=launch", null).statusCode());
+    assertEquals(404, get("/position?email=a%40example.com&group=launch", "anything").statusCode());
+    assertEquals(404, get("/stats", null).statusCode());
+  }
+}
@@ -0,0 +1,177 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShutdownTest {
+  static final int PORT = 9094;
+
+  StubGoogleServer stub;
+  WaitServer server;
+  HttpClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (server != null) {
+      server.stop();
+    }
+    client.close();
+    stub.close();
+  }
+
+  void startServer(WaitConfig config) throws Exception {
+    server = new WaitServer(
+      PORT,
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      config
+        .toBuilder()
+        .googleEndpoints(stub.endpoints())
+        .deduplication(new DeduplicationConfig(true, false, 10000))
+        .build()
+    );
+    server.start();
+  }
+
+  CompletableFuture<HttpResponse<String>> write(String email) {
+    var request = HttpRequest.newBuilder()
+      .uri(URI.create("http://localhost:" + PORT + "/write"))
+      .header("Content-Type", "application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", email).toString()))
+      .build();
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  void drainWritesInFlight() throws Exception {
+    startServer(WaitConfig.DEFAULT);
+    stub.appendLatencyMillis = 500;
+
+    var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+    for (int i = 0; i < 3; i++) {
+      responses.add(write("test" + i + "@example.com"));
+    }
+    while (stub.appendRequests.get() < 3) {
+      Thread.sleep(10);
+    }
+
+    var report = server.stop();
+
+    for (var response : responses) {
+      assertEquals(200, response.get().statusCode());
+    }
+    assertEquals(3, stub.appendedRows.size());
+    assertEquals(3, report.requestsDrained());
+    assertEquals(0, report.requestsCut());
+  }
+
+  @Test
+  void reportRequestsCutAtTheDeadline() throws Exception {
+    startServer(WaitConfig.builder().shutdown(new ShutdownConfig(Duration.ofMillis(200), Duration.ofSeconds(5))).build());
+    stub.appendLatencyMillis = 2000;
+
+    write("test@example.com");
+    while (stub.appendRequests.get() < 1) {
+      Thread.sleep(10);
+    }
+
+    var report = server.stop();
+
+    assertEquals(0, report.requestsDrained());
+    assertEquals(1, report.requestsCut());
+  }
+
+  @Test
+  void flushQueuedSignupsAsOneBatch() throws Exception {
+    var writeBehind = new WriteBehindConfig(true, 100, 50, Duration.ofSeconds(30), Duration.ofMillis(10));
+    startServer(WaitConfig.builder().writeBehind(writeBehind).build());
+    stub.appendLatencyMillis = 300;
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(202, write("test" + i + "@example.com").get().statusCode());
+    }
+    assertEquals(0, stub.appendRequests.get());
+
+    var report = server.stop();
+
+    assertEquals(1, stub.appendRequests.get());
+    assertEquals(5, stub.appendedRows.size());
+    assertEquals(5, report.signupsFlushed());
+    assertEquals(0, report.signupsLeft());
+  }
+
+  @Test
+  void stopWritingAtTheFlushTimeout() throws Exception {
+    var writes = new AtomicInteger();
+    var writesAfterClose = new AtomicInteger();
+    var closed = new AtomicBoolean(false);
+    var sink = new SignupSink() {
+      @Override
+      public void write(List<Signup> signups) throws Exception {
+        if (closed.get()) {
+          writesAfterClose.incrementAndGet();
+        }
+        writes.incrementAndGet();
+        // Hangs like a call to Google that never returns, until it is cancelled.
+        new CountDownLatch(1).await();
+      }
+
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+    var writeBehind = new WriteBehindConfig(true, 100, 1, Duration.ofMillis(10), Duration.ofMillis(10));
+    server = new WaitServer(
+      PORT,
+      sink,
+      WaitConfig.builder()
+        .writeBehind(writeBehind)
+        .deduplication(new DeduplicationConfig(true, false, 10000))
+        .shutdown(new ShutdownConfig(Duration.ofSeconds(1), Duration.ofMillis(300)))
+        .build()
+    );
+    server.start();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(202, write("test" + i + "@example.com").get().statusCode());
+    }
+    while (writes.get() < 1) {
+      Thread.sleep(10);
+    }
+
+    var report = server.stop();
+    Thread.sleep(200);
+
+    assertTrue(closed.get());
+    assertEquals(0, report.signupsFlushed());
+    assertEquals(0, report.signupsFailed());
+    // The batch in flight and the 2 queued ones.
+    assertEquals(3, report.signupsLeft());
+    assertEquals(1, writes.get());
+    assertEquals(0, writesAfterClose.get());
+  }
+}
@@ -0,0 +1,100 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignupIndexTest {
+  @Test
+  void detectDuplicatesPerGroup() {
+    var index = new SignupIndex();
+
+    assertTrue(index.add("group", "test@example.com"));
+    assertFalse(index.add("group", " Test@Example.COM "));
+    assertTrue(index.contains("group", "TEST@example.com"));
+
+    assertFalse(index.contains("other", "test@example.com"));
+    assertFalse(index.contains(null, "test@example.com"));
+    assertTrue(index.add(null, "test@example.com"));
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  void removeSignup() {
+    var index = new SignupIndex();
+    index.add("group", "test@example.com");
+
+    index.remove("group", "test@example.com");
+
+    assertFalse(index.contains("group", "test@example.com"));
+    assertTrue(index.add("group", "test@example.com"));
+  }
+
+  @Test
+  void numberSignupsInOrderPerGroup() {
+    var index = new SignupIndex();
+    index.add("group", "a@example.com");
+    index.add("other", "b@example.com");
+    index.add("group", "c@example.com");
+    index.add("group", "A@example.com");
+
+    assertEquals(1, index.position("group", "a@example.com"));
+    assertEquals(2, index.position("group", "c@example.com"));
+    assertEquals(1, index.position("other", "b@example.com"));
+    assertEquals(0, index.position("group", "b@example.com"));
+    assertEquals(2, index.size("group"));
+
+    // Removing the last one doesn't leave a gap.
+    index.remove("group", "c@example.com");
+    index.add("group", "d@example.com");
+    assertEquals(2, index.position("group", "d@example.com"));
+  }
+
+  @Test
+  void numberSignupsAddedWhileLoadingAfterTheLoadedOnes() {
+    var index = new SignupIndex();
+    index.startLoading();
+
+    assertTrue(index.add("group", "new@example.com"));
+    assertTrue(index.add("group", "written@example.com"));
+    assertFalse(index.add("group", "new@example.com"));
+    assertEquals(0, index.position("group", "new@example.com"));
+    assertTrue(index.isLoading());
+
+    assertTrue(index.load("group", "old@example.com"));
+    // Written to the sheet while loading, so it is numbered by its row.
+    assertFalse(index.load("group", "written@example.com"));
+    index.finishLoading();
+
+    assertFalse(index.isLoading());
+    assertEquals(1, index.position("group", "old@example.com"));
+    assertEquals(2, index.position("group", "written@example.com"));
+    assertEquals(3, index.position("group", "new@example.com"));
+    assertTrue(index.add("group", "next@example.com"));
+    assertEquals(4, index.position("group", "next@example.com"));
+  }
+
+  @Test
+  void reportMemoryAndRebuildTimePerMillionEmails() {
+    var emails = new String[1_000_000];
+    for (int i = 0; i < emails.length; i++) {
+      emails[i] = "user" + i + "@example.com";
+    }
+
+    var index = new SignupIndex();
+    var startNanos = System.nanoTime();
+    index.startLoading();
+    for (var email : emails) {
+      index.load("group", email);
+    }
+    index.finishLoading();
+    var rebuildMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+    assertEquals(1_000_000, index.size());
+    assertEquals(1_000_000, index.position("group", emails[emails.length - 1]));
+    System.out.println(
+      "The signup index uses " + index.memoryBytes() + " bytes per million emails and was rebuilt in " + rebuildMillis + "ms."
+    );
+    assertTrue(index.memoryBytes() < 120L * 1024 * 1024);
+  }
+}
@@ -0,0 +1,144 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignupJournalTest {
+  Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("wait-journal");
+  }
+
+  @Test
+  void replayUnacknowledgedEntriesAfterReopen() throws IOException {
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      var first = journal.append(new Signup("first@example.com", "group"));
+      journal.append(new Signup("second@example.com", null));
+      journal.append(new Signup("third@example.com", "group"));
+      journal.acknowledge(List.of(first));
+    }
+
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      var entries = journal.unacknowledgedAtOpen();
+      assertEquals(List.of(2L, 3L), entries.stream().map(SignupJournal.Entry::sequence).toList());
+      assertEquals("second@example.com", entries.getFirst().signup().email());
+      assertNull(entries.getFirst().signup().group());
+      assertEquals(4L, journal.append(new Signup("fourth@example.com", "group")).sequence());
+    }
+  }
+
+  @Test
+  void advanceCheckpointOnlyOverContiguousEntries() throws IOException {
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      var first = journal.append(new Signup("first@example.com", "group"));
+      var second = journal.append(new Signup("second@example.com", "group"));
+
+      journal.acknowledge(List.of(second));
+      assertEquals(0L, journal.checkpoint());
+
+      journal.acknowledge(List.of(first));
+      assertEquals(2L, journal.checkpoint());
+    }
+  }
+
+  @Test
+  void rollOverAndCompactAcknowledgedSegments() throws IOException {
+    try (var journal = SignupJournal.open(directory, 128)) {
+      var entries = new ArrayList<SignupJournal.Entry>();
+      for (int i = 0; i < 20; i++) {
+        entries.add(journal.append(new Signup("test" + i + "@example.com", "group")));
+      }
+      assertTrue(journal.segmentCount() > 1);
+
+      journal.acknowledge(entries.subList(0, 10));
+      journal.acknowledge(entries.subList(10, 20));
+      assertEquals(1, journal.segmentCount());
+    }
+
+    try (var journal = SignupJournal.open(directory, 128)) {
+      assertTrue(journal.unacknowledgedAtOpen().isEmpty());
+      assertEquals(21L, journal.append(new Signup("next@example.com", "group")).sequence());
+    }
+  }
+
+  @Test
+  void retainAcknowledgedSegmentsAndReadTheRest() throws IOException {
+    try (var journal = SignupJournal.open(directory, 128, true)) {
+      var entries = new ArrayList<SignupJournal.Entry>();
+      for (int i = 0; i < 10; i++) {
+        entries.add(journal.append(new Signup("test" + i + "@example.com", "group")));
+      }
+      var segments = journal.segmentCount();
+      assertTrue(segments > 1);
+
+      journal.acknowledge(entries.subList(0, 4));
+      journal.acknowledge(List.of(entries.get(5)));
+      assertEquals(segments, journal.segmentCount());
+      assertEquals(5, journal.unacknowledgedCount());
+
+      var unacknowledged = journal.readUnacknowledged(3);
+      assertEquals(List.of(5L, 7L, 8L), unacknowledged.stream().map(SignupJournal.Entry::sequence).toList());
+      assertEquals("test4@example.com", unacknowledged.getFirst().signup().email());
+    }
+
+    try (var journal = SignupJournal.open(directory, 128, true)) {
+      var all = new ArrayList<SignupJournal.Entry>();
+      journal.forEach(all::add);
+      assertEquals(10, all.size());
+      assertEquals("test9@example.com", all.getLast().signup().email());
+    }
+  }
+
+  @Test
+  void truncateTornEntry() throws IOException {
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      journal.append(new Signup("first@example.com", "group"));
+      journal.append(new Signup("second@example.com", "group"));
+    }
+
+    try (var files = Files.list(directory)) {
+      var segment = files.filter(p -> p.getFileName().toString().endsWith(SignupJournal.SEGMENT_SUFFIX)).findFirst().orElseThrow();
+      Files.write(segment, new byte[]{0, 0, 0, 42, 0, 0}, StandardOpenOption.APPEND);
+    }
+
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      assertEquals(2, journal.unacknowledgedAtOpen().size());
+      assertEquals(3L, journal.append(new Signup("third@example.com", "group")).sequence());
+    }
+
+    try (var journal = SignupJournal.open(directory, 1024 * 1024)) {
+      assertEquals(3, journal.unacknowledgedAtOpen().size());
+    }
+  }
+
+  @Test
+  void decodeEntriesWithAndWithoutOrigin() throws IOException {
+    var signup = new Signup("test@example.com", "group", Instant.ofEpochSecond(1700000000, 5), "https://example.com");
+    assertEquals(signup, SignupJournal.decode(SignupJournal.encode(signup)));
+
+    // An entry written before the origin was recorded.
+    var bytes = new ByteArrayOutputStream();
+    try (var out = new DataOutputStream(bytes)) {
+      out.writeLong(1700000000);
+      out.writeInt(5);
+      out.writeUTF("test@example.com");
+      out.writeBoolean(true);
+      out.writeUTF("group");
+    }
+    assertEquals(new Signup("test@example.com", "group", Instant.ofEpochSecond(1700000000, 5)), SignupJournal.decode(bytes.toByteArray()));
+  }
+}
@@ -0,0 +1,131 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignupRouterTest {
+  static final String TABLE = """
+    {
+      "destinations": {
+        "a": {"sheetId": "sheet-a", "serviceAccountKeyFile": "a-key.json"},
+        "b": {"sheetId": "sheet-b", "sheetName": "Signups"}
+      },
+      "routes": [
+        {"group": "launch-a", "destination": "a"},
+        {"origin": "https://B.example.com", "destination": "b"},
+        {"group": "launch-b", "origin": "https://other.example.com", "destination": "b"}
+      ]
+    }
+    """;
+
+  Path directory;
+  Path file;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    directory = Files.createTempDirectory("routing");
+    file = directory.resolve("routing.json");
+    Files.writeString(file, TABLE);
+    Files.writeString(directory.resolve("a-key.json"), "{\"client_email\": \"a@example.com\"}");
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    try (var files = Files.list(directory)) {
+      for (var path : files.toList()) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  void routeByGroupThenOrigin() {
+    try (var router = new SignupRouter(file, Duration.ofMinutes(1))) {
+      var a = router.route("launch-a", "https://b.example.com");
+      assertEquals("a", a.name());
+      assertEquals("sheet-a", a.sheetId());
+      assertEquals("Sheet1", a.sheetName());
+      assertEquals("{\"client_email\": \"a@example.com\"}", a.serviceAccountKeyJson());
+
+      var b = router.route("unknown", "https://b.example.com");
+      assertEquals("b", b.name());
+      assertEquals("Signups", b.sheetName());
+      assertNull(b.serviceAccountKeyJson());
+      assertSame(b, router.route(null, "https://other.example.com"));
+      assertSame(b, router.route("launch-b", null));
+
+      assertNull(router.route("unknown", "https://unknown.example.com"));
+      assertNull(router.route(null, null));
+    }
+  }
+
+  @Test
+  void reloadWhenTheFileChanges() throws Exception {
+    try (var router = new SignupRouter(file, Duration.ofMinutes(1))) {
+      Files.writeString(file, TABLE.replace("\"launch-a\"", "\"launch-c\""));
+      Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+      router.reloadIfChanged();
+
+      assertNull(router.route("launch-a", null));
+      assertEquals("a", router.route("launch-c", null).name());
+    }
+  }
+
+  @Test
+  void keepTheCurrentTableWhenTheNewOneIsInvalid() throws Exception {
+    try (var router = new SignupRouter(file, Duration.ofMinutes(1))) {
+      Files.writeString(file, TABLE.replace("\"destination\": \"a\"", "\"destination\": \"missing\""));
+      Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+      router.reloadIfChanged();
+
+      assertEquals("a", router.route("launch-a", null).name());
+    }
+  }
+
+  @Test
+  void closeTheDestinationsDroppedFromTheTable() throws Exception {
+    var closed = new CopyOnWriteArrayList<String>();
+    var server = new WaitServer(0, signups -> {}, WaitConfig.builder().shutdown(new ShutdownConfig(Duration.ZERO, Duration.ofSeconds(5))).build());
+    server.pipeline.destinationSinkFactory = destination -> new SignupSink() {
+      @Override
+      public void write(List<Signup> signups) {}
+
+      @Override
+      public void close() {
+        closed.add(destination.sheetId());
+      }
+    };
+
+    try (var router = new SignupRouter(file, Duration.ofMinutes(1))) {
+      server.pipeline.router = router;
+      router.onReload(server.pipeline::retireStaleDestinations);
+      server.pipeline.getDestination(new Signup("a@example.com", "launch-a"));
+      server.pipeline.getDestination(new Signup("b@example.com", "launch-b"));
+
+      // Changes the sheet of a, so that its old destination is no longer routed to.
+      Files.writeString(file, TABLE.replace("\"sheet-a\"", "\"sheet-c\""));
+      Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+      router.reloadIfChanged();
+      for (var retiring : List.copyOf(server.pipeline.retiringDestinations)) {
+        retiring.join();
+      }
+
+      assertEquals(List.of("sheet-a"), closed);
+      assertEquals(Set.of("sheet-b"), server.pipeline.routedDestinations.keySet().stream().map(SignupRouter.DestinationConfig::sheetId).collect(Collectors.toSet()));
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignupStoreTest {
+  StoreConfig config;
+  final List<List<Signup>> batches = new CopyOnWriteArrayList<>();
+  final AtomicBoolean failing = new AtomicBoolean(false);
+  final SignupSink sink = signups -> {
+    if (failing.get()) {
+      throw new IOException("Google is down");
+    }
+    batches.add(signups);
+  };
+
+  @BeforeEach
+  void setUp() throws IOException {
+    // The exporter only runs when the tests call it.
+    config = new StoreConfig(true, Files.createTempDirectory("wait-store").toString(), 256, Duration.ofHours(1), 2);
+  }
+
+  @Test
+  void skipDuplicatesAndRebuildTheIndexOnOpen() throws Exception {
+    try (var store = SignupStore.open(config, signup -> sink)) {
+      assertTrue(store.append(new Signup("a@example.com", "launch")));
+      assertFalse(store.append(new Signup("A@example.com ", "launch")));
+      assertTrue(store.append(new Signup("a@example.com", "beta")));
+      assertTrue(store.append(new Signup("b@example.com", null)));
+    }
+
+    try (var store = SignupStore.open(config, signup -> sink)) {
+      assertFalse(store.append(new Signup("a@example.com", "launch")));
+      assertTrue(store.contains(null, "b@example.com"));
+      assertTrue(store.append(new Signup("c@example.com", "launch")));
+      assertEquals(2, store.index.position("launch", "c@example.com"));
+
+      var stats = store.stats();
+      assertEquals(4, stats.signups());
+      // Closing the store exported the first three.
+      assertEquals(3, stats.exported());
+      assertEquals(1, stats.pendingExport());
+      assertEquals(Map.of("", 1L, "beta", 1L, "launch", 2L), stats.signupsByGroup());
+      assertTrue(stats.logBytes() > 0);
+    }
+  }
+
+  @Test
+  void exportInBatchesOnlyOnce() throws Exception {
+    try (var store = SignupStore.open(config, signup -> sink)) {
+      for (int i = 0; i < 5; i++) {
+        store.append(new Signup("test" + i + "@example.com", "launch"));
+      }
+
+      assertEquals(2, store.export());
+      assertEquals(2, store.export());
+      assertEquals(1, store.export());
+      assertEquals(0, store.export());
+
+      assertEquals(List.of(2, 2, 1), batches.stream().map(List::size).toList());
+      assertEquals("test4@example.com", batches.getLast().getFirst().email());
+      assertEquals(5, store.stats().exported());
+      assertNotNull(store.stats().lastExportAt());
+    }
+
+    try (var store = SignupStore.open(config, signup -> sink)) {
+      assertEquals(0, store.export());
+      assertEquals(5, store.stats().exported());
+    }
+  }
+
+  @Test
+  void retryFailedExports() throws Exception {
+    try (var store = SignupStore.open(config, signup -> sink)) {
+      store.retryDelay = Duration.ZERO;
+      store.append(new Signup("a@example.com", "launch"));
+
+      failing.set(true);
+      assertThrows(IOException.class, store::export);
+      assertThrows(IOException.class, store::export);
+      assertEquals(1, store.stats().pendingExport());
+      // The retry doesn't count the signup again.
+      assertEquals(1, store.failedCount.get());
+
+      failing.set(false);
+      assertEquals(1, store.export());
+      assertEquals(0, store.stats().pendingExport());
+      assertEquals(1, batches.size());
+    }
+  }
+
+  @Test
+  void exportPastASlowSink() throws Exception {
+    var release = new CountDownLatch(1);
+    var slowBatches = new CopyOnWriteArrayList<List<Signup>>();
+    SignupSink slow = signups -> {
+      release.await();
+      slowBatches.add(signups);
+    };
+
+    try (var store = SignupStore.open(config, signup -> signup.group().equals("slow") ? slow : sink)) {
+      store.append(new Signup("a@example.com", "slow"));
+      store.append(new Signup("b@example.com", "slow"));
+      store.append(new Signup("c@example.com", "fast"));
+      store.append(new Signup("d@example.com", "fast"));
+
+      var slowRound = store.dispatch();
+      assertEquals(2, slowRound.size());
+      // The signups of the busy sink are skipped, and the batch is filled with the later ones.
+      assertEquals(2, store.export());
+      assertEquals(List.of("c@example.com", "d@example.com"), batches.getFirst().stream().map(Signup::email).toList());
+      assertEquals(2, store.stats().pendingExport());
+
+      release.countDown();
+      slowRound.exports().getFirst().get();
+      assertEquals(1, slowBatches.size());
+      assertEquals(0, store.stats().pendingExport());
+    }
+  }
+
+  @Test
+  void exportTheRestOnClose() throws Exception {
+    var store = SignupStore.open(config, signup -> sink);
+    for (int i = 0; i < 3; i++) {
+      store.append(new Signup("test" + i + "@example.com", "launch"));
+    }
+
+    var report = store.close(Duration.ofSeconds(5));
+
+    assertEquals(3, report.signupsFlushed());
+    assertEquals(0, report.signupsLeft());
+    assertEquals(List.of(2, 1), batches.stream().map(List::size).toList());
+  }
+}
@@ -0,0 +1,138 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+  static final int PORT = 9096;
+  static final int CALLERS = 20;
+
+  @Test
+  void shareOneCallPerKey() throws Exception {
+    var singleFlight = new SingleFlight<String, Integer>();
+    var calls = new AtomicInteger();
+    var release = new CountDownLatch(1);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var results = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < CALLERS; i++) {
+        results.add(executor.submit(() -> singleFlight.run("key", () -> {
+          calls.incrementAndGet();
+          release.await();
+          return 42;
+        })));
+      }
+      while (singleFlight.sharedCount.get() < CALLERS - 1) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      for (var result : results) {
+        assertEquals(42, (int) result.get());
+      }
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(0, singleFlight.inFlight());
+    // The next call runs again.
+    assertEquals(43, (int) singleFlight.run("key", () -> 43));
+  }
+
+  @Test
+  void shareTheFailure() throws Exception {
+    var singleFlight = new SingleFlight<String, Void>();
+    var release = new CountDownLatch(1);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var leader = executor.submit(() -> singleFlight.run("key", () -> {
+        release.await();
+        throw new IOException("Google is down");
+      }));
+      while (singleFlight.inFlight() == 0) {
+        Thread.sleep(1);
+      }
+      var follower = executor.submit(() -> singleFlight.run("key", () -> null));
+      while (singleFlight.sharedCount.get() == 0) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      assertInstanceOf(IOException.class, assertThrows(Exception.class, leader::get).getCause());
+      assertInstanceOf(IOException.class, assertThrows(Exception.class, follower::get).getCause());
+    }
+    assertEquals(0, singleFlight.inFlight());
+  }
+
+  @Test
+  void coalesceIdenticalPostsIntoOneAppend() throws Exception {
+    var stub = new StubGoogleServer();
+    var server = new WaitServer(
+      PORT,
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      WaitConfig.builder()
+        .googleEndpoints(stub.endpoints())
+        .deduplication(new DeduplicationConfig(true, false, 10000))
+        .build()
+    );
+    server.start();
+    stub.appendLatencyMillis = 500;
+
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+      for (int i = 0; i < CALLERS; i++) {
+        // The same signup from different tabs, with different casing.
+        var email = i % 2 == 0 ? "launch@example.com" : " Launch@Example.com";
+        responses.add(client.sendAsync(
+          HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:" + PORT + "/write"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", email).add("group", "launch").toString()))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        ));
+      }
+
+      for (var response : responses) {
+        assertEquals(200, response.get().statusCode());
+      }
+      assertEquals(1, stub.appendRequests.get());
+      assertEquals(1, stub.appendedRows.size());
+    } finally {
+      server.stop();
+      stub.close();
+    }
+  }
+
+  @Test
+  void skipADuplicateThatPassedTheCheckBeforeTheWriteFinished() throws Exception {
+    var rows = new CopyOnWriteArrayList<Signup>();
+    SignupSink sink = rows::addAll;
+    var server = new WaitServer(PORT, sink, WaitConfig.DEFAULT);
+    server.pipeline.signupIndex = new SignupIndex();
+    var destination = new Destination("default", sink, WaitConfig.DEFAULT, null, server.metrics);
+
+    server.pipeline.writeOnce(destination, new Signup("launch@example.com", "launch"));
+    // Checked the index before the first write added to it, and arrives after the first write stopped being in flight.
+    server.pipeline.writeOnce(destination, new Signup(" Launch@Example.com", "launch"));
+
+    assertEquals(1, rows.size());
+    assertEquals(0, server.pipeline.inFlightWrites.inFlight());
+  }
+}
@@ -0,0 +1,63 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StaticAssetTest {
+  static final byte[] CONTENT = "<html><body>Join the waitlist</body></html>\n".repeat(50).getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void precompressVariants() throws IOException {
+    var asset = new StaticAsset(CONTENT, "text/html; charset=UTF-8");
+
+    assertArrayEquals(CONTENT, new GZIPInputStream(new ByteArrayInputStream(asset.gzip.body())).readAllBytes());
+    assertArrayEquals(CONTENT, new InflaterInputStream(new ByteArrayInputStream(asset.deflate.body())).readAllBytes());
+    assertTrue(asset.gzip.body().length < CONTENT.length / 10);
+    assertEquals("gzip", asset.gzip.headers().get("Content-Encoding"));
+    assertNull(asset.identity.headers().get("Content-Encoding"));
+    assertNotEquals(asset.identity.etag(), asset.gzip.etag());
+  }
+
+  @Test
+  void skipCompressionThatDoesNotHelp() {
+    var asset = new StaticAsset("a".getBytes(StandardCharsets.UTF_8), "text/plain");
+
+    assertNull(asset.gzip);
+    assertSame(asset.identity, asset.select("gzip, deflate"));
+  }
+
+  @Test
+  void selectEncoding() {
+    var asset = new StaticAsset(CONTENT, "text/html; charset=UTF-8");
+
+    assertSame(asset.gzip, asset.select("gzip, deflate, br, zstd"));
+    assertSame(asset.gzip, asset.select("br;q=1.0, GZIP;q=0.5"));
+    assertSame(asset.gzip, asset.select("*"));
+    assertSame(asset.deflate, asset.select("deflate"));
+    assertSame(asset.deflate, asset.select("gzip;q=0, deflate"));
+    assertSame(asset.deflate, asset.select("gzip; q=0.000, *"));
+    assertSame(asset.identity, asset.select("identity"));
+    assertSame(asset.identity, asset.select("br"));
+    assertSame(asset.identity, asset.select("*;q=0"));
+    assertSame(asset.identity, asset.select(null));
+  }
+
+  @Test
+  void matchIfNoneMatch() {
+    var asset = new StaticAsset(CONTENT, "text/html; charset=UTF-8");
+
+    assertTrue(asset.isNotModified(asset.identity.etag()));
+    assertTrue(asset.isNotModified("\"other\", W/" + asset.gzip.etag()));
+    assertTrue(asset.isNotModified("*"));
+    assertFalse(asset.isNotModified("\"other\""));
+    assertFalse(asset.isNotModified(null));
+    assertFalse(new StaticAsset("changed".repeat(50).getBytes(StandardCharsets.UTF_8), "text/plain").isNotModified(asset.identity.etag()));
+  }
+}
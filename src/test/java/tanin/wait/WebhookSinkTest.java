@@ -0,0 +1,76 @@
+package tanin.wait;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebhookSinkTest {
+  static final RetryConfig RETRY = new RetryConfig(3, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofSeconds(5));
+
+  HttpServer startWebhook(int... statuses) throws IOException {
+    var posts = new AtomicInteger();
+    var webhook = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    webhook.createContext("/hook", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      var status = statuses[Math.min(posts.getAndIncrement(), statuses.length - 1)];
+      exchange.sendResponseHeaders(status, -1);
+      exchange.close();
+    });
+    webhook.start();
+    return webhook;
+  }
+
+  URI hookUrl(HttpServer webhook) {
+    return URI.create("http://localhost:" + webhook.getAddress().getPort() + "/hook");
+  }
+
+  @Test
+  void retryAServerError() throws Exception {
+    var webhook = startWebhook(503, 503, 204);
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var sink = new WebhookSink(hookUrl(webhook), Duration.ofSeconds(5), new RetryPolicy(RETRY), client);
+
+      sink.writeAsync(List.of(new Signup("a@example.com", "launch"))).get(5, TimeUnit.SECONDS);
+    } finally {
+      webhook.stop(0);
+    }
+  }
+
+  @Test
+  void failWithoutRetryingAClientError() throws Exception {
+    var webhook = startWebhook(400, 204);
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var sink = new WebhookSink(hookUrl(webhook), Duration.ofSeconds(5), new RetryPolicy(RETRY), client);
+
+      var error = assertThrows(ExecutionException.class, () -> sink.writeAsync(List.of(new Signup("a@example.com", "launch"))).get(5, TimeUnit.SECONDS));
+      assertInstanceOf(IOException.class, error.getCause());
+      assertEquals("The webhook returned 400", error.getCause().getMessage());
+    } finally {
+      webhook.stop(0);
+    }
+  }
+
+  @Test
+  void failAfterTheLastAttempt() throws Exception {
+    var webhook = startWebhook(503);
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var sink = new WebhookSink(hookUrl(webhook), Duration.ofSeconds(5), new RetryPolicy(RETRY), client);
+
+      var error = assertThrows(IOException.class, () -> sink.write(List.of(new Signup("a@example.com", "launch"))));
+      assertEquals("The webhook returned 503", error.getMessage());
+    } finally {
+      webhook.stop(0);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindQueueTest {
+  @Test
+  void combineRowsIntoOneFlush() {
+    var batches = new CopyOnWriteArrayList<List<Signup>>();
+    var queue = new WriteBehindQueue<Signup>(
+      new WriteBehindConfig(true, 100, 50, Duration.ofMillis(300), Duration.ofMillis(10)),
+      batches::add
+    );
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(new Signup("test" + i + "@example.com", "group")));
+    }
+    queue.close();
+
+    assertEquals(1, batches.size());
+    assertEquals(10, batches.getFirst().size());
+    assertEquals("test0@example.com", batches.getFirst().getFirst().email());
+  }
+
+  @Test
+  void splitByMaxBatchSize() {
+    var batches = new CopyOnWriteArrayList<List<Signup>>();
+    var queue = new WriteBehindQueue<Signup>(
+      new WriteBehindConfig(true, 100, 4, Duration.ofMillis(300), Duration.ofMillis(10)),
+      batches::add
+    );
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(new Signup("test" + i + "@example.com", "group")));
+    }
+    queue.close();
+
+    assertEquals(List.of(4, 4, 2), batches.stream().map(List::size).toList());
+  }
+
+  @Test
+  void rejectWhenFull() throws InterruptedException {
+    var flushing = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var queue = new WriteBehindQueue<Signup>(
+      new WriteBehindConfig(true, 2, 1, Duration.ofMillis(10), Duration.ofMillis(10)),
+      batch -> {
+        flushing.countDown();
+        release.await();
+      }
+    );
+
+    assertTrue(queue.offer(new Signup("first@example.com", "group")));
+    flushing.await();
+
+    assertTrue(queue.offer(new Signup("second@example.com", "group")));
+    assertTrue(queue.offer(new Signup("third@example.com", "group")));
+    assertFalse(queue.offer(new Signup("fourth@example.com", "group")));
+
+    release.countDown();
+    queue.close();
+    assertEquals(3, queue.flushedCount.get());
+  }
+
+  @Test
+  void drainOnClose() {
+    var batches = new CopyOnWriteArrayList<List<Signup>>();
+    var queue = new WriteBehindQueue<Signup>(
+      new WriteBehindConfig(true, 100, 50, Duration.ofSeconds(60), Duration.ofMillis(10)),
+      batches::add
+    );
+
+    assertTrue(queue.offer(new Signup("test@example.com", "group")));
+    queue.close(Duration.ofSeconds(5));
+
+    assertEquals(1, batches.size());
+    assertFalse(queue.offer(new Signup("late@example.com", "group")));
+  }
+
+  @Test
+  void stopFlushingAtTheCloseTimeout() throws Exception {
+    var flushing = new CountDownLatch(1);
+    var calls = new AtomicInteger();
+    var queue = new WriteBehindQueue<Signup>(
+      new WriteBehindConfig(true, 100, 1, Duration.ofMillis(10), Duration.ofMillis(10)),
+      batch -> {
+        calls.incrementAndGet();
+        flushing.countDown();
+        // Blocks until the flusher is interrupted.
+        new CountDownLatch(1).await();
+      }
+    );
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(queue.offer(new Signup("test" + i + "@example.com", "group")));
+    }
+    flushing.await();
+
+    // The batch in flight and the 2 queued ones.
+    assertEquals(3, queue.close(Duration.ofMillis(200)));
+    Thread.sleep(100);
+    assertEquals(1, calls.get());
+    assertEquals(0, queue.flushedCount.get());
+    assertEquals(0, queue.failedCount.get());
+  }
+}
@@ -0,0 +1,105 @@
+package tanin.wait;
+
+import com.eclipsesource.json.Json;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteRequestLimitsTest {
+  static final int PORT = 9097;
+
+  StubGoogleServer stub;
+  WaitServer server;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGoogleServer();
+    server = new WaitServer(
+      PORT,
+      StubGoogleServer.generateServiceAccountKeyJson(),
+      "sheet-id",
+      "Sheet1",
+      WaitConfig.builder().googleEndpoints(stub.endpoints()).build()
+    );
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+    stub.close();
+  }
+
+  /**
+   * Sends only the headers, so that a server that waited for the body would time out instead of answering.
+   */
+  String sendHeadersOnly(String contentType, long contentLength) throws Exception {
+    try (var socket = new Socket("localhost", PORT)) {
+      socket.setSoTimeout(3000);
+      var headers = "POST /write HTTP/1.1\r\n" +
+        "Host: localhost\r\n" +
+        "Content-Type: " + contentType + "\r\n" +
+        "Content-Length: " + contentLength + "\r\n" +
+        "\r\n";
+      socket.getOutputStream().write(headers.getBytes(StandardCharsets.US_ASCII));
+      socket.getOutputStream().flush();
+      return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+    }
+  }
+
+  @Test
+  void rejectOversizedBodyBeforeReadingIt() throws Exception {
+    var statusLine = sendHeadersOnly("application/json", 10L * 1024 * 1024);
+    assertTrue(statusLine.startsWith("HTTP/1.1 413 "), statusLine);
+  }
+
+  @Test
+  void rejectNonJsonBodyBeforeReadingIt() throws Exception {
+    var statusLine = sendHeadersOnly("application/x-www-form-urlencoded", 20);
+    assertTrue(statusLine.startsWith("HTTP/1.1 415 "), statusLine);
+  }
+
+  @Test
+  void acceptJsonWithCharset() throws Exception {
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var response = client.send(
+        HttpRequest.newBuilder()
+          .uri(URI.create("http://localhost:" + PORT + "/write"))
+          .header("Content-Type", "application/json; charset=utf-8")
+          .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", "test@example.com").toString()))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+      assertEquals(200, response.statusCode());
+      assertEquals(1, stub.appendedRows.size());
+    }
+  }
+
+  @Test
+  void acceptJsonWithoutContentType() throws Exception {
+    try (var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+      var response = client.send(
+        HttpRequest.newBuilder()
+          .uri(URI.create("http://localhost:" + PORT + "/write"))
+          .POST(HttpRequest.BodyPublishers.ofString(Json.object().add("email", "test@example.com").toString()))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+      assertEquals(200, response.statusCode());
+      assertEquals(1, stub.appendedRows.size());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package tanin.wait;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteRequestParserTest {
+  static Signup parse(String body) {
+    return WriteRequestParser.parse(body.getBytes(StandardCharsets.UTF_8), 16);
+  }
+
+  @Test
+  void parseEmailAndGroup() {
+    var signup = parse("{\"email\": \" test@example.com \", \"group\": \" launch \"}");
+
+    assertEquals("test@example.com", signup.email());
+    assertEquals("launch", signup.group());
+  }
+
+  @Test
+  void skipOtherFields() {
+    var signup = parse("{\"utm\": {\"source\": [1, -2.5e3, true, null, \"x}\"]}, \"email\": \"test@example.com\", \"count\": 3}");
+
+    assertEquals("test@example.com", signup.email());
+    assertNull(signup.group());
+  }
+
+  @Test
+  void decodeEscapes() {
+    var signup = parse("{\"\\u0065mail\": \"t\\u00e9st@example.com\", \"group\": \"a\\\"b\"}");
+
+    assertEquals("t\u00e9st@example.com", signup.email());
+    assertEquals("a\"b", signup.group());
+  }
+
+  @Test
+  void returnNullForMissingOrInvalidEmail() {
+    assertNull(parse("{}"));
+    assertNull(parse("{\"email\": null}"));
+    assertNull(parse("{\"email\": \"aaabbb\"}"));
+  }
+
+  @Test
+  void rejectMalformedBodies() {
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse(""));
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("[]"));
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("{\"email\": \"test@example.com\""));
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("{\"email\": \"test@example.com\"} x"));
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("{\"email\": 1}"));
+    assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("{\"a\": " + "[".repeat(17) + "]".repeat(17) + "}"));
+  }
+
+  @Test
+  void rejectLongFields() {
+    var error = assertThrows(WriteRequestParser.InvalidRequestException.class, () -> parse("{\"email\": \"test@example.com\", \"group\": \"" + "a".repeat(17) + "\"}"));
+
+    assertEquals("The group is too long.", error.getMessage());
+    assertEquals("a".repeat(16), parse("{\"email\": \"test@example.com\", \"group\": \"" + "a".repeat(16) + "\"}").group());
+  }
+
+  @Test
+  void validateEmails() {
+    for (var valid : new String[] {"a@b.co", "first.last+tag@sub.example.com", "o'brien@example.ie", "user@xn--bcher-kva.example", "us\u00e9r@b\u00fccher.de"}) {
+      assertTrue(WriteRequestParser.isValidEmail(valid), valid);
+    }
+
+    for (var invalid : new String[] {
+      "test", "@example.com", "test@", "test@localhost", ".test@example.com", "te..st@example.com", "test.@example.com",
+      "te st@example.com", "test@-example.com", "test@example-.com", "test@example..com", "test@[127.0.0.1]",
+      "\"quoted\"@example.com", "a".repeat(65) + "@example.com", "test@" + "a".repeat(64) + ".com",
+      "test@" + "a.".repeat(125) + "com"
+    }) {
+      assertFalse(WriteRequestParser.isValidEmail(invalid), invalid);
+    }
+  }
+}
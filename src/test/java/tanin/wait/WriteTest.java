@@ -27,6 +27,8 @@ public class WriteTest extends Base {
 
     var response = client.send(request, HttpResponse.BodyHandlers.ofString());
     assertEquals(200, response.statusCode());
+    assertEquals(1, stub.appendedRows.size());
+    assertEquals("test-email@backdooradmin.com", stub.appendedRows.getFirst().get(0).asString());
   }
 
   @Test